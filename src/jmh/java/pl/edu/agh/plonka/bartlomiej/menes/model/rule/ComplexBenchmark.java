@@ -0,0 +1,113 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.edu.agh.plonka.bartlomiej.menes.model.*;
+import pl.edu.agh.plonka.bartlomiej.menes.utils.SyntheticOntology;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singleton;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ComplexBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"500", "2000"})
+    private int patientsCount;
+
+    @Param({"25", "100"})
+    private int complexesCount;
+
+    private List<Patient> patients;
+    private List<Complex> complexes;
+    private Category category;
+    private TrainingSet trainingSet;
+    private CoverageIndex index;
+    private Star star;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticOntology ontology = new SyntheticOntology(3);
+        patients = ontology.patientGenerator(SEED).generate(patientsCount);
+        complexes = generateComplexes(ontology, new Random(SEED));
+
+        Set<ObjectProperty> premiseEntityProperties = new HashSet<>(ontology.getEntityProperties());
+        premiseEntityProperties.remove(ontology.getCategoryProperty());
+        trainingSet = new TrainingSet(patients,
+                new PremiseProperties(ontology.getNumericProperties(), premiseEntityProperties),
+                singleton(ontology.getCategoryProperty()));
+        Entity firstCategory = ontology.getCategoryProperty().getRangeValues()
+                .stream()
+                .min(comparing(Entity::getID))
+                .orElseThrow(IllegalStateException::new);
+        category = new Category(firstCategory, ontology.getCategoryProperty().getID());
+    }
+
+    /**
+     * Sorting starts with an empty complex cache, like a star of new conjunctions.
+     */
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        index = new CoverageIndex(trainingSet);
+        star = new Star();
+        star.clear();
+        star.addAll(complexes);
+    }
+
+    @Benchmark
+    public void isPatientCovered(Blackhole blackhole) {
+        for (Complex complex : complexes) {
+            for (Patient patient : patients)
+                blackhole.consume(complex.isPatientCovered(patient));
+        }
+    }
+
+    @Benchmark
+    public Star sortStar() {
+        ComplexComparator.sortStar(star, category, index);
+        return star;
+    }
+
+    private List<Complex> generateComplexes(SyntheticOntology ontology, Random random) {
+        List<ObjectProperty> entityProperties = ontology.getEntityProperties()
+                .stream()
+                .filter(property -> !property.equals(ontology.getCategoryProperty()))
+                .sorted(comparing(Property::getID))
+                .collect(toList());
+        List<NumericProperty> numericProperties = ontology.getNumericProperties()
+                .stream()
+                .sorted(comparing(Property::getID))
+                .collect(toList());
+        List<Complex> complexes = new ArrayList<>(complexesCount);
+        for (int i = 0; i < complexesCount; i++) {
+            Complex complex = new Complex();
+            ObjectProperty entityProperty = entityProperties.get(random.nextInt(entityProperties.size()));
+            List<Entity> values = entityProperty.getRangeValues()
+                    .stream()
+                    .sorted(comparing(Entity::getID))
+                    .collect(toList());
+            complex.setEntitySelector(entityProperty,
+                    new EntitiesSelector(singleton(values.get(random.nextInt(values.size())))));
+            NumericProperty numericProperty = numericProperties.get(random.nextInt(numericProperties.size()));
+            float threshold = numericProperty.getMinValue()
+                    + random.nextFloat() * (numericProperty.getMaxValue() - numericProperty.getMinValue());
+            @SuppressWarnings("unchecked")
+            LinearSelector<Float> selector = random.nextBoolean()
+                    ? LinearSelector.atLeastSelector(threshold)
+                    : LinearSelector.lessThanSelector(threshold);
+            complex.setNumericSelector(numericProperty, selector);
+            complexes.add(complex);
+        }
+        return complexes;
+    }
+}
@@ -0,0 +1,85 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import org.openjdk.jmh.annotations.*;
+import pl.edu.agh.plonka.bartlomiej.menes.model.*;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Category;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Complex;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.CoverageIndex;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+import pl.edu.agh.plonka.bartlomiej.menes.utils.SyntheticOntology;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singleton;
+import static java.util.Comparator.comparing;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MachineLearningBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"500", "2000"})
+    private int patientsCount;
+
+    @Param({"2", "5"})
+    private int categoriesCount;
+
+    private MachineLearning machineLearning;
+    private Set<Patient> patients;
+    private Set<ObjectProperty> predicateCategories;
+
+    private TrainingSet trainingSet;
+    private PremiseProperties premiseProperties;
+    private Category category;
+    private CoverageIndex index;
+    private PatientDistances distances;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticOntology ontology = new SyntheticOntology(categoriesCount);
+        machineLearning = new MachineLearning(ontology.getOntology());
+        patients = new LinkedHashSet<>(ontology.patientGenerator(SEED).generate(patientsCount));
+        predicateCategories = singleton(ontology.getCategoryProperty());
+
+        Set<ObjectProperty> premiseEntityProperties = new HashSet<>(ontology.getEntityProperties());
+        premiseEntityProperties.removeAll(predicateCategories);
+        premiseProperties = new PremiseProperties(ontology.getNumericProperties(), premiseEntityProperties);
+        trainingSet = new TrainingSet(patients, premiseProperties, predicateCategories);
+        Entity firstCategory = ontology.getCategoryProperty().getRangeValues()
+                .stream()
+                .min(comparing(Entity::getID))
+                .orElseThrow(IllegalStateException::new);
+        category = new Category(firstCategory, ontology.getCategoryProperty().getID());
+    }
+
+    /**
+     * Every findComplex call starts with an empty complex cache, like the first complex of a category.
+     */
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        index = new CoverageIndex(trainingSet);
+        distances = new PatientDistances(trainingSet, premiseProperties, index.getCategoryCoverage(category));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        machineLearning.shutdown();
+    }
+
+    @Benchmark
+    public Collection<Rule> sequentialCovering() throws Throwable {
+        return machineLearning.sequentialCovering(patients, predicateCategories);
+    }
+
+    @Benchmark
+    public Complex findComplex() throws Exception {
+        return machineLearning.findComplex(index, index.allPatients(), category, distances, premiseProperties, null,
+                Long.MAX_VALUE);
+    }
+}
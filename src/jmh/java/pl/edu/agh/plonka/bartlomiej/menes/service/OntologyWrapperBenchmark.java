@@ -0,0 +1,31 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of the test ontologies. Run from the project directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OntologyWrapperBenchmark {
+
+    private static final File HEART_DISEASE = new File("src/test/resources/heart_disease.rdf");
+    private static final File HUMAN_DISEASES = new File("src/test/resources/human_diseases.owl");
+
+    @Benchmark
+    public OntologyWrapper loadHeartDisease() throws OWLOntologyCreationException {
+        return new OntologyWrapper(HEART_DISEASE);
+    }
+
+    @Benchmark
+    public OntologyWrapper loadHumanDiseases() throws OWLOntologyCreationException {
+        return new OntologyWrapper(HUMAN_DISEASES);
+    }
+}
@@ -0,0 +1,59 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import pl.edu.agh.plonka.bartlomiej.menes.model.ObjectProperty;
+import pl.edu.agh.plonka.bartlomiej.menes.utils.PatientGenerator;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptySet;
+
+/**
+ * Inference for synthetic patients added to the test ontology. Run from the project directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatientsServiceBenchmark {
+
+    private static final File HUMAN_DISEASES = new File("src/test/resources/human_diseases.owl");
+    private static final String CATEGORY_PROPERTY = "hasDisease";
+    private static final long SEED = 42;
+
+    @Param({"100", "1000"})
+    private int patientsCount;
+
+    private MachineLearning machineLearning;
+    private PatientsService patientsService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OWLOntologyCreationException {
+        OntologyWrapper ontology = new OntologyWrapper(HUMAN_DISEASES);
+        ObjectProperty categoryProperty = ontology.getEntityProperties()
+                .stream()
+                .filter(property -> property.getID().equals(CATEGORY_PROPERTY))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        // numeric values are asserted as xsd:float, which is outside the unsignedByte ranges of the test ontology
+        PatientGenerator generator = new PatientGenerator(emptySet(),
+                ontology.getEntityProperties(), categoryProperty, SEED);
+        machineLearning = new MachineLearning(ontology);
+        patientsService = new PatientsService(ontology, machineLearning);
+        patientsService.addPatients(generator.generate(patientsCount));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        machineLearning.shutdown();
+    }
+
+    @Benchmark
+    public InferenceSummary infer() {
+        return patientsService.infer();
+    }
+}
@@ -0,0 +1,77 @@
+package pl.edu.agh.plonka.bartlomiej.menes.utils;
+
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.NumericProperty;
+import pl.edu.agh.plonka.bartlomiej.menes.model.ObjectProperty;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
+
+import java.util.*;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Seeded generator of patients for benchmarks. Every patient gets one value of the category property and the
+ * other properties are correlated with it, so there are rules to learn. Equal seeds give equal patients.
+ * The first numeric property is never missing, so patients of different categories can always be told apart.
+ */
+public class PatientGenerator {
+
+    private static final float MISSING_NUMERIC_PROBABILITY = 0.1f;
+    private static final float CORRELATED_ENTITY_PROBABILITY = 0.8f;
+
+    private final List<NumericProperty> numericProperties;
+    private final List<ObjectProperty> entityProperties;
+    private final ObjectProperty categoryProperty;
+    private final Map<String, List<Entity>> rangeValues = new HashMap<>();
+    private final Random random;
+
+    public PatientGenerator(Collection<NumericProperty> numericProperties, Collection<ObjectProperty> entityProperties,
+                            ObjectProperty categoryProperty, long seed) {
+        this.numericProperties = sorted(numericProperties);
+        this.entityProperties = sorted(entityProperties);
+        this.entityProperties.removeIf(property -> property.getID().equals(categoryProperty.getID()));
+        this.categoryProperty = categoryProperty;
+        this.random = new Random(seed);
+        for (ObjectProperty property : this.entityProperties)
+            rangeValues.put(property.getID(), sorted(property.getRangeValues()));
+        rangeValues.put(categoryProperty.getID(), sorted(categoryProperty.getRangeValues()));
+    }
+
+    public List<Patient> generate(int count) {
+        List<Patient> patients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            patients.add(generate("patient" + i));
+        return patients;
+    }
+
+    private Patient generate(String patientId) {
+        Patient patient = new Patient(patientId);
+        List<Entity> categories = rangeValues.get(categoryProperty.getID());
+        int category = random.nextInt(categories.size());
+        patient.setEntityProperty(categoryProperty.getID(), categories.get(category));
+
+        for (ObjectProperty property : entityProperties) {
+            List<Entity> values = rangeValues.get(property.getID());
+            if (values.isEmpty())
+                continue;
+            int value = random.nextFloat() < CORRELATED_ENTITY_PROBABILITY
+                    ? (category + random.nextInt(2)) % values.size()
+                    : random.nextInt(values.size());
+            patient.setEntityProperty(property.getID(), values.get(value));
+        }
+        for (NumericProperty property : numericProperties) {
+            if (property != numericProperties.get(0) && random.nextFloat() < MISSING_NUMERIC_PROBABILITY)
+                continue;
+            float min = property.getMinValue() != null ? property.getMinValue() : 0f;
+            float max = property.getMaxValue() != null ? property.getMaxValue() : 100f;
+            float position = (category + 2 * random.nextFloat()) / (categories.size() + 1);
+            patient.setNumericProperty(property.getID(), min + (max - min) * position);
+        }
+        return patient;
+    }
+
+    private static <T extends Entity> List<T> sorted(Collection<T> entities) {
+        return entities.stream().sorted(comparing(Entity::getID)).collect(toList());
+    }
+}
@@ -0,0 +1,76 @@
+package pl.edu.agh.plonka.bartlomiej.menes.utils;
+
+import pl.edu.agh.plonka.bartlomiej.menes.model.*;
+import pl.edu.agh.plonka.bartlomiej.menes.service.OntologyWrapper;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Collections.singleton;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static pl.edu.agh.plonka.bartlomiej.menes.utils.Constants.PATIENT_CLASS;
+
+/**
+ * Vocabulary of a patient ontology without the reasoner, for benchmarking learning only.
+ * {@link #getOntology()} is a mock answering the vocabulary queries used by learning, like in MachineLearningTest.
+ */
+public class SyntheticOntology {
+
+    public static final String CATEGORY_PROPERTY = "hasDisease";
+
+    private static final String[] ENTITY_PROPERTIES = {"hasSymptom", "negativeTest", "shouldMakeTest"};
+    private static final int ENTITIES_PER_PROPERTY = 6;
+    private static final String[] NUMERIC_PROPERTIES = {"age", "height", "weight"};
+
+    private final Set<OntologyClass> classes = new HashSet<>();
+    private final Set<NumericProperty> numericProperties = new HashSet<>();
+    private final Set<ObjectProperty> entityProperties = new HashSet<>();
+    private final ObjectProperty categoryProperty;
+    private final OntologyWrapper ontology;
+
+    public SyntheticOntology(int categoriesCount) {
+        classes.add(new OntologyClass(PATIENT_CLASS));
+        categoryProperty = new ObjectProperty(CATEGORY_PROPERTY, singleton(createClass("Disease", categoriesCount)));
+        entityProperties.add(categoryProperty);
+        for (String property : ENTITY_PROPERTIES)
+            entityProperties.add(new ObjectProperty(property, singleton(createClass(property + "Value", ENTITIES_PER_PROPERTY))));
+        for (String property : NUMERIC_PROPERTIES)
+            numericProperties.add(new NumericProperty(property, 200f, 0f));
+
+        // stub only, so that invocations aren't recorded across benchmark iterations
+        ontology = mock(OntologyWrapper.class, withSettings().stubOnly());
+        when(ontology.getClasses()).thenReturn(classes);
+        when(ontology.getNumericProperties()).thenReturn(numericProperties);
+        when(ontology.getEntityProperties()).thenReturn(entityProperties);
+    }
+
+    public OntologyWrapper getOntology() {
+        return ontology;
+    }
+
+    public Set<NumericProperty> getNumericProperties() {
+        return numericProperties;
+    }
+
+    public Set<ObjectProperty> getEntityProperties() {
+        return entityProperties;
+    }
+
+    public ObjectProperty getCategoryProperty() {
+        return categoryProperty;
+    }
+
+    public PatientGenerator patientGenerator(long seed) {
+        return new PatientGenerator(numericProperties, entityProperties, categoryProperty, seed);
+    }
+
+    private OntologyClass createClass(String name, int instancesCount) {
+        OntologyClass ontologyClass = new OntologyClass(name);
+        for (int i = 0; i < instancesCount; i++)
+            ontologyClass.addInstance(new Entity(name + i));
+        classes.add(ontologyClass);
+        return ontologyClass;
+    }
+}
@@ -0,0 +1,65 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model;
+
+import java.util.Arrays;
+
+/**
+ * Entity values of one object property for all rows of a {@link TrainingSet}, stored in CSR form.
+ * Values of row i are dictionary ids stored sorted in {@code values[offsets[i]..offsets[i + 1])}.
+ */
+public class EntityColumn {
+
+    private final ObjectProperty property;
+    private final int[] offsets;
+    private final int[] values;
+    private final int rangeSize;
+
+    EntityColumn(ObjectProperty property, int[] offsets, int[] values, int rangeSize) {
+        this.property = property;
+        this.offsets = offsets;
+        this.values = values;
+        this.rangeSize = rangeSize;
+    }
+
+    public ObjectProperty getProperty() {
+        return property;
+    }
+
+    public int getRangeSize() {
+        return rangeSize;
+    }
+
+    public int getStart(int row) {
+        return offsets[row];
+    }
+
+    public int getEnd(int row) {
+        return offsets[row + 1];
+    }
+
+    public int getValue(int position) {
+        return values[position];
+    }
+
+    public boolean contains(int row, int entityId) {
+        return Arrays.binarySearch(values, offsets[row], offsets[row + 1], entityId) >= 0;
+    }
+
+    public int symmetricDifference(int row1, int row2) {
+        int i = offsets[row1], end1 = offsets[row1 + 1];
+        int j = offsets[row2], end2 = offsets[row2 + 1];
+        int difference = 0;
+        while (i < end1 && j < end2) {
+            if (values[i] == values[j]) {
+                i++;
+                j++;
+            } else if (values[i] < values[j]) {
+                i++;
+                difference++;
+            } else {
+                j++;
+                difference++;
+            }
+        }
+        return difference + (end1 - i) + (end2 - j);
+    }
+}
@@ -0,0 +1,56 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static java.util.Collections.unmodifiableCollection;
+
+/**
+ * Entities and classes of an ontology by their IDs. Registration is safe for concurrent use.
+ */
+public class EntityRegistry {
+
+    private final Map<String, OntologyClass> classes = new ConcurrentHashMap<>();
+    private final Map<String, Entity> entities = new ConcurrentHashMap<>();
+
+    public OntologyClass findClass(String id) {
+        return id != null ? classes.get(id) : null;
+    }
+
+    public Entity findEntity(String id) {
+        return id != null ? entities.get(id) : null;
+    }
+
+    public boolean containsEntity(String id) {
+        return findEntity(id) != null;
+    }
+
+    public void registerClass(OntologyClass ontologyClass) {
+        classes.put(ontologyClass.getID(), ontologyClass);
+    }
+
+    public void registerEntity(Entity entity) {
+        entities.put(entity.getID(), entity);
+    }
+
+    /**
+     * Returns the registered class, the class is created and registered only if there is none with this ID.
+     */
+    public OntologyClass getOrRegisterClass(String id, Function<String, OntologyClass> classFactory) {
+        return classes.computeIfAbsent(id, classFactory);
+    }
+
+    public void unregisterEntity(String id) {
+        entities.remove(id);
+    }
+
+    public Collection<OntologyClass> getClasses() {
+        return unmodifiableCollection(classes.values());
+    }
+
+    public Collection<Entity> getEntities() {
+        return unmodifiableCollection(entities.values());
+    }
+}
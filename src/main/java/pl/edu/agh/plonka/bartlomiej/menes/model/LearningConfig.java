@@ -0,0 +1,163 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model;
+
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.CoverageIndex;
+
+import static java.lang.String.format;
+
+/**
+ * Parameters of rule learning. Time budgets are in milliseconds, 0 means no limit. When a budget is exceeded
+ * learning stops and rules found so far are returned.
+ */
+public class LearningConfig {
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long cacheBytes = CoverageIndex.DEFAULT_CACHE_BYTES;
+
+    private int beamWidth = 5;
+    // 0 for restrictive, 1 for general
+    private float epsilon = 0.5f;
+    private float coveredWeight = 1f;
+    private float uncoveredWeight = 1f;
+    private int maxRulesPerCategory = Integer.MAX_VALUE;
+    private int maxSelectorsPerComplex = Integer.MAX_VALUE;
+    private int minCoverage = 1;
+    private long categoryTimeBudget = 0;
+    private long totalTimeBudget = 0;
+    private boolean incremental = false;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException(format("INVALID_PARALLELISM %d", parallelism));
+        this.parallelism = parallelism;
+    }
+
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    public void setCacheBytes(long cacheBytes) {
+        if (cacheBytes < 0)
+            throw new IllegalArgumentException(format("INVALID_CACHE_BYTES %d", cacheBytes));
+        this.cacheBytes = cacheBytes;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public void setBeamWidth(int beamWidth) {
+        if (beamWidth < 1)
+            throw new IllegalArgumentException(format("INVALID_BEAM_WIDTH %d", beamWidth));
+        this.beamWidth = beamWidth;
+    }
+
+    public float getEpsilon() {
+        return epsilon;
+    }
+
+    public void setEpsilon(float epsilon) {
+        if (!(epsilon >= 0 && epsilon <= 1))
+            throw new IllegalArgumentException(format("INVALID_EPSILON %f", epsilon));
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Weight of covered patients of the learned category in complex evaluation.
+     */
+    public float getCoveredWeight() {
+        return coveredWeight;
+    }
+
+    public void setCoveredWeight(float coveredWeight) {
+        if (!(coveredWeight >= 0))
+            throw new IllegalArgumentException(format("INVALID_COVERED_WEIGHT %f", coveredWeight));
+        this.coveredWeight = coveredWeight;
+    }
+
+    /**
+     * Weight of uncovered patients of other categories in complex evaluation.
+     */
+    public float getUncoveredWeight() {
+        return uncoveredWeight;
+    }
+
+    public void setUncoveredWeight(float uncoveredWeight) {
+        if (!(uncoveredWeight >= 0))
+            throw new IllegalArgumentException(format("INVALID_UNCOVERED_WEIGHT %f", uncoveredWeight));
+        this.uncoveredWeight = uncoveredWeight;
+    }
+
+    public int getMaxRulesPerCategory() {
+        return maxRulesPerCategory;
+    }
+
+    public void setMaxRulesPerCategory(int maxRulesPerCategory) {
+        if (maxRulesPerCategory < 1)
+            throw new IllegalArgumentException(format("INVALID_MAX_RULES_PER_CATEGORY %d", maxRulesPerCategory));
+        this.maxRulesPerCategory = maxRulesPerCategory;
+    }
+
+    /**
+     * Maximal number of selectors in a complex, counting every entity of an entity selector separately.
+     * Specialization of a complex stops at this limit even if it still covers patients of other categories.
+     */
+    public int getMaxSelectorsPerComplex() {
+        return maxSelectorsPerComplex;
+    }
+
+    public void setMaxSelectorsPerComplex(int maxSelectorsPerComplex) {
+        if (maxSelectorsPerComplex < 1)
+            throw new IllegalArgumentException(format("INVALID_MAX_SELECTORS_PER_COMPLEX %d", maxSelectorsPerComplex));
+        this.maxSelectorsPerComplex = maxSelectorsPerComplex;
+    }
+
+    /**
+     * Minimal number of not yet covered patients of the category a complex has to cover to generate a rule.
+     * Patients covered by a rejected complex are still treated as covered.
+     */
+    public int getMinCoverage() {
+        return minCoverage;
+    }
+
+    public void setMinCoverage(int minCoverage) {
+        if (minCoverage < 1)
+            throw new IllegalArgumentException(format("INVALID_MIN_COVERAGE %d", minCoverage));
+        this.minCoverage = minCoverage;
+    }
+
+    public long getCategoryTimeBudget() {
+        return categoryTimeBudget;
+    }
+
+    public void setCategoryTimeBudget(long categoryTimeBudget) {
+        if (categoryTimeBudget < 0)
+            throw new IllegalArgumentException(format("INVALID_CATEGORY_TIME_BUDGET %d", categoryTimeBudget));
+        this.categoryTimeBudget = categoryTimeBudget;
+    }
+
+    public long getTotalTimeBudget() {
+        return totalTimeBudget;
+    }
+
+    public void setTotalTimeBudget(long totalTimeBudget) {
+        if (totalTimeBudget < 0)
+            throw new IllegalArgumentException(format("INVALID_TOTAL_TIME_BUDGET %d", totalTimeBudget));
+        this.totalTimeBudget = totalTimeBudget;
+    }
+
+    /**
+     * Whether a run starts from the rules learned by the previous run of the same learner for the same predicates.
+     * Rules still consistent with the training set are kept, so only patients not covered by them are learned.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+}
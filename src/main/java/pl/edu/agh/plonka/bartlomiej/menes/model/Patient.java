@@ -163,7 +163,7 @@ public class Patient extends Entity implements Comparable<Patient> {
     }
 
     public Set<String> getStringProperties(String propertyName) {
-        return stringProperties.get(propertyName);
+        return getProperties(stringProperties, propertyName);
     }
 
     public Map<String, Set<Float>> getNumericProperties() {
@@ -171,7 +171,7 @@ public class Patient extends Entity implements Comparable<Patient> {
     }
 
     public Set<Float> getNumericProperties(String propertyName) {
-        return numericProperties.get(propertyName);
+        return getProperties(numericProperties, propertyName);
     }
 
     public Map<String, Set<Boolean>> getBooleanProperties() {
@@ -0,0 +1,131 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model;
+
+import org.slf4j.Logger;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Category;
+
+import java.util.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Read-only columnar view of patients used during learning. Patients are addressed by row index,
+ * numeric values are kept in {@code float[]} columns (NaN when missing) and entity values
+ * are dictionary encoded in {@link EntityColumn}s.
+ */
+public class TrainingSet {
+
+    private static final Logger LOG = getLogger(TrainingSet.class);
+
+    private final List<Patient> patients;
+    private final List<Entity> entities = new ArrayList<>();
+    private final Map<Entity, Integer> entityIds = new HashMap<>();
+    private final Map<String, float[]> numericColumns = new HashMap<>();
+    private final Map<String, EntityColumn> entityColumns = new HashMap<>();
+    private final Map<String, EntityColumn> categoryColumns = new HashMap<>();
+
+    public TrainingSet(Collection<Patient> patients, PremiseProperties premiseProperties,
+                       Collection<ObjectProperty> categoryProperties) {
+        this.patients = new ArrayList<>(patients);
+        for (NumericProperty property : premiseProperties.integerProperties)
+            numericColumns.put(property.getID(), createNumericColumn(property));
+        for (ObjectProperty property : premiseProperties.objectProperties)
+            entityColumns.put(property.getID(), createEntityColumn(property, false));
+        for (ObjectProperty property : categoryProperties)
+            categoryColumns.put(property.getID(), createEntityColumn(property, true));
+        LOG.debug("Created training set of {} patients and {} entities", this.patients.size(), entities.size());
+    }
+
+    public int size() {
+        return patients.size();
+    }
+
+    public Patient getPatient(int row) {
+        return patients.get(row);
+    }
+
+    public Entity getEntity(int entityId) {
+        return entities.get(entityId);
+    }
+
+    public int getEntitiesCount() {
+        return entities.size();
+    }
+
+    public int getEntityId(Entity entity) {
+        Integer entityId = entityIds.get(entity);
+        return entityId != null ? entityId : -1;
+    }
+
+    public float[] getNumericColumn(String property) {
+        return numericColumns.get(property);
+    }
+
+    public EntityColumn getEntityColumn(String property) {
+        return entityColumns.get(property);
+    }
+
+    public EntityColumn getCategoryColumn(String predicate) {
+        return categoryColumns.get(predicate);
+    }
+
+    public BitSet getCategoryRows(Category category) {
+        BitSet rows = new BitSet(patients.size());
+        EntityColumn column = categoryColumns.get(category.getPredicate());
+        int entityId = getEntityId(category.getEntity());
+        if (column == null || entityId < 0)
+            return rows;
+        for (int row = 0; row < patients.size(); row++) {
+            if (column.contains(row, entityId))
+                rows.set(row);
+        }
+        return rows;
+    }
+
+    private float[] createNumericColumn(NumericProperty property) {
+        float[] column = new float[patients.size()];
+        for (int row = 0; row < patients.size(); row++) {
+            Float value = patients.get(row).getNumericProperty(property.getID());
+            column[row] = value != null ? value : Float.NaN;
+        }
+        return column;
+    }
+
+    private EntityColumn createEntityColumn(ObjectProperty property, boolean withInferred) {
+        int[] offsets = new int[patients.size() + 1];
+        int[] values = new int[patients.size()];
+        for (int row = 0; row < patients.size(); row++) {
+            int[] rowValues = encodeEntities(patients.get(row), property.getID(), withInferred);
+            offsets[row + 1] = offsets[row] + rowValues.length;
+            if (offsets[row + 1] > values.length)
+                values = Arrays.copyOf(values, Math.max(offsets[row + 1], 2 * values.length));
+            System.arraycopy(rowValues, 0, values, offsets[row], rowValues.length);
+        }
+        return new EntityColumn(property, offsets, Arrays.copyOf(values, offsets[patients.size()]),
+                property.getRangeValues().size());
+    }
+
+    private int[] encodeEntities(Patient patient, String property, boolean withInferred) {
+        Set<Entity> values = patient.getEntityProperties(property);
+        if (withInferred) {
+            Set<Entity> inferredValues = patient.getInferredEntityProperties(property);
+            if (inferredValues != null && !inferredValues.isEmpty()) {
+                values = new HashSet<>(values);
+                values.addAll(inferredValues);
+            }
+        }
+        int[] encoded = values.stream()
+                .filter(Objects::nonNull)
+                .mapToInt(this::encodeEntity)
+                .distinct()
+                .toArray();
+        Arrays.sort(encoded);
+        return encoded;
+    }
+
+    private int encodeEntity(Entity entity) {
+        return entityIds.computeIfAbsent(entity, e -> {
+            entities.add(e);
+            return entities.size() - 1;
+        });
+    }
+}
@@ -3,6 +3,7 @@ package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
 import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
 import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
 
+import java.util.Objects;
 import java.util.Set;
 
 import static java.lang.String.format;
@@ -38,6 +39,25 @@ public class Category {
         return predicate;
     }
 
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((entity == null) ? 0 : entity.hashCode());
+        result = prime * result + ((predicate == null) ? 0 : predicate.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Category other = (Category) obj;
+        return Objects.equals(entity, other.entity) && Objects.equals(predicate, other.predicate);
+    }
+
     @Override
     public String toString() {
         return format("%s=%s", predicate, entity);
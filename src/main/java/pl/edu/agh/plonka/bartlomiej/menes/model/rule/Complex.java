@@ -24,6 +24,7 @@ public class Complex implements Comparable<Complex> {
     private Map<String, EntitiesSelector> entitySelectors = new HashMap<>();
 
     private Float evaluation;
+    private ComplexKey key;
 
     @SuppressWarnings("unchecked")
     public static Complex conjunction(Complex complex1, Complex complex2) {
@@ -44,14 +45,6 @@ public class Complex implements Comparable<Complex> {
         return selector2;
     }
 
-    public static Collection<Complex> intersection(Collection<Complex> complexes1, Collection<Complex> complexes2) {
-        List<Complex> resultComplexes = new LinkedList<>();
-        for (Complex complex1 : complexes1)
-            for (Complex complex2 : complexes2)
-                resultComplexes.add(Complex.conjunction(complex1, complex2));
-        return resultComplexes;
-    }
-
     private Collection<AbstractAtom> createEntityAtoms(Variable patientVariable) {
         return entitySelectors.entrySet()
                 .stream()
@@ -175,6 +168,25 @@ public class Complex implements Comparable<Complex> {
         return true;
     }
 
+    /**
+     * Returns a new bitset of covered rows, possibly copied from the coverage cached by the index.
+     */
+    public BitSet getCoverage(CoverageIndex index) {
+        return (BitSet) index.getCoverage(this).clone();
+    }
+
+    BitSet computeCoverage(CoverageIndex index) {
+        BitSet coverage = index.allPatients();
+        for (Map.Entry<String, EntitiesSelector> entry : entitySelectors.entrySet()) {
+            for (Entity entity : entry.getValue())
+                coverage.and(index.getEntityCoverage(entry.getKey(), entity));
+        }
+        for (Map.Entry<String, LinearSelector<Float>> entry : numericSelectors.entrySet()) {
+            coverage.and(index.getNumericCoverage(entry.getKey(), entry.getValue()));
+        }
+        return coverage;
+    }
+
     private boolean covers(Selector<Entity> selector, Collection<Entity> entities) {
         return selector == null || selector.covers(entities);
     }
@@ -219,12 +231,41 @@ public class Complex implements Comparable<Complex> {
         return 0;
     }
 
+    public int getSelectorsCount() {
+        int count = numericSelectors.size();
+        for (EntitiesSelector selector : entitySelectors.values())
+            count += selector.size();
+        return count;
+    }
+
+    public ComplexKey getKey() {
+        if (key == null)
+            key = new ComplexKey(entitySelectors, numericSelectors);
+        return key;
+    }
+
+    @Override
+    public int hashCode() {
+        return getKey().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        return getKey().equals(((Complex) obj).getKey());
+    }
+
     public void setEntitySelector(ObjectProperty property, EntitiesSelector selector) {
         entitySelectors.put(property.getID(), selector);
+        key = null;
     }
 
     public void setNumericSelector(NumericProperty property, LinearSelector<Float> selector) {
         numericSelectors.put(property.getID(), selector);
+        key = null;
     }
 
     private static <T, U> Map<T, U> mergeMaps(Map<T, U> map1, Map<T, U> map2, BinaryOperator<U> conflictResolver) {
@@ -2,38 +2,43 @@ package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
 
-import java.util.Collection;
 import java.util.Comparator;
 
 public class ComplexComparator implements Comparator<Complex> {
 
     private final static Logger LOG = LoggerFactory.getLogger(ComplexComparator.class);
 
-    private final static float w1 = 1f;
-    private final static float w2 = 1f;
+    private final static float DEFAULT_WEIGHT = 1f;
 
-    public static void sortStar(Star star, Category category, Collection<Patient> trainingSet) {
-        ComplexComparator comparator = new ComplexComparator(star, category, trainingSet);
+    private final CoverageIndex index;
+    private final Category category;
+    private final int categorySize;
+    private final float w1;
+    private final float w2;
+
+    public static void sortStar(Star star, Category category, CoverageIndex index) {
+        ComplexComparator comparator = new ComplexComparator(category, index);
+        star.parallelStream().forEach(comparator::evaluate);
         star.sort(comparator.reversed());
     }
 
-    private ComplexComparator(Star star, Category category, Collection<Patient> trainingSet) {
-        star.forEach(complex -> evaluateComplex(complex, category, trainingSet));
+    public ComplexComparator(Category category, CoverageIndex index) {
+        this(category, index, DEFAULT_WEIGHT, DEFAULT_WEIGHT);
     }
 
-    private static void evaluateComplex(Complex complex, Category category, Collection<Patient> trainingSet) {
-        int coveredWithTheSameCategory = 0;
-        int uncoveredWithDifferentCategory = 0;
+    public ComplexComparator(Category category, CoverageIndex index, float w1, float w2) {
+        this.index = index;
+        this.category = category;
+        this.categorySize = index.getCategoryCoverage(category).cardinality();
+        this.w1 = w1;
+        this.w2 = w2;
+    }
 
-        for (Patient patient : trainingSet) {
-            if (complex.isPatientCovered(patient) && category.assertPatientInCategory(patient))
-                coveredWithTheSameCategory++;
-            else if (!complex.isPatientCovered(patient) && !category.assertPatientInCategory(patient)) {
-                uncoveredWithDifferentCategory++;
-            }
-        }
+    public void evaluate(Complex complex) {
+        int coveredWithTheSameCategory = index.getCoveredCount(complex, category);
+        int coveredOrInCategory = index.getCoveredCount(complex) + categorySize - coveredWithTheSameCategory;
+        int uncoveredWithDifferentCategory = index.size() - coveredOrInCategory;
 
         complex.setEvaluation(w1 * coveredWithTheSameCategory + w2 * uncoveredWithDifferentCategory);
     }
@@ -48,6 +53,4 @@ public class ComplexComparator implements Comparator<Complex> {
             return 0;
         }
     }
-
-
 }
@@ -0,0 +1,66 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Range;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+
+import java.util.Map;
+
+/**
+ * Immutable canonical form of a {@link Complex}: selectors sorted by property, entity selectors as sorted entity ids
+ * (empty ones, which cover everything, are skipped) and numeric selectors as ranges with all empty ranges unified.
+ * Complexes selecting the same patients by the same selectors have equal keys.
+ */
+public final class ComplexKey {
+
+    private static final Range<Float> EMPTY_RANGE = Range.closedOpen(0f, 0f);
+
+    private final ImmutableSortedMap<String, ImmutableSortedSet<String>> entitySelectors;
+    private final ImmutableSortedMap<String, Range<Float>> numericSelectors;
+    private final int hashCode;
+
+    ComplexKey(Map<String, EntitiesSelector> entitySelectors, Map<String, LinearSelector<Float>> numericSelectors) {
+        ImmutableSortedMap.Builder<String, ImmutableSortedSet<String>> entityBuilder = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, EntitiesSelector> entry : entitySelectors.entrySet()) {
+            if (entry.getValue() == null || entry.getValue().isEmpty())
+                continue;
+            ImmutableSortedSet.Builder<String> entities = ImmutableSortedSet.naturalOrder();
+            for (Entity entity : entry.getValue())
+                entities.add(entity.getID());
+            entityBuilder.put(entry.getKey(), entities.build());
+        }
+        ImmutableSortedMap.Builder<String, Range<Float>> numericBuilder = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, LinearSelector<Float>> entry : numericSelectors.entrySet()) {
+            if (entry.getValue() == null)
+                continue;
+            Range<Float> range = entry.getValue().getRange();
+            numericBuilder.put(entry.getKey(), range.isEmpty() ? EMPTY_RANGE : range);
+        }
+        this.entitySelectors = entityBuilder.build();
+        this.numericSelectors = numericBuilder.build();
+        this.hashCode = 31 * this.entitySelectors.hashCode() + this.numericSelectors.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        ComplexKey other = (ComplexKey) obj;
+        return hashCode == other.hashCode
+                && entitySelectors.equals(other.entitySelectors)
+                && numericSelectors.equals(other.numericSelectors);
+    }
+
+    @Override
+    public String toString() {
+        return entitySelectors + " " + numericSelectors;
+    }
+}
@@ -0,0 +1,267 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.BoundType;
+import org.slf4j.Logger;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.EntityColumn;
+import pl.edu.agh.plonka.bartlomiej.menes.model.TrainingSet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Patient bitsets for elementary selectors. Bit i of every bitset is row i of the indexed {@link TrainingSet}.
+ * Bitsets returned by the getters are shared and must not be modified.
+ * Coverages of whole complexes and their counts are kept in an LRU cache keyed by {@link ComplexKey}, bounded by
+ * the approximate number of bytes taken by the cached bitsets.
+ * Covered counts of all categories of a predicate are counted together, in one pass over the covered rows.
+ */
+public class CoverageIndex {
+
+    private static final Logger LOG = getLogger(CoverageIndex.class);
+
+    private static final BitSet EMPTY = new BitSet();
+
+    public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+
+    // complex key, counts and bitset headers of an entry
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final TrainingSet trainingSet;
+    private final BitSet allPatients;
+
+    private final Map<String, BitSet[]> entityCoverages = new ConcurrentHashMap<>();
+    private final Map<String, BitSet> numericDefinedCoverages = new ConcurrentHashMap<>();
+    private final Map<Threshold, BitSet> thresholdCoverages = new ConcurrentHashMap<>();
+    private final Map<Category, BitSet> categoryCoverages = new ConcurrentHashMap<>();
+    private final Map<String, CategoryClasses> categoryClasses = new ConcurrentHashMap<>();
+    private final Cache<ComplexKey, CachedComplex> complexCache;
+
+    public CoverageIndex(TrainingSet trainingSet) {
+        this(trainingSet, DEFAULT_CACHE_BYTES);
+    }
+
+    public CoverageIndex(TrainingSet trainingSet, long cacheBytes) {
+        this.trainingSet = trainingSet;
+        this.allPatients = new BitSet(trainingSet.size());
+        this.allPatients.set(0, trainingSet.size());
+        this.complexCache = CacheBuilder.newBuilder()
+                .maximumWeight(cacheBytes)
+                .weigher((ComplexKey key, CachedComplex cachedComplex) -> cachedComplex.weight())
+                .recordStats()
+                .build();
+    }
+
+    public TrainingSet getTrainingSet() {
+        return trainingSet;
+    }
+
+    public int size() {
+        return trainingSet.size();
+    }
+
+    public BitSet allPatients() {
+        return (BitSet) allPatients.clone();
+    }
+
+    public BitSet getCategoryCoverage(Category category) {
+        return categoryCoverages.computeIfAbsent(category, trainingSet::getCategoryRows);
+    }
+
+    public BitSet getEntityCoverage(String property, Entity entity) {
+        int entityId = trainingSet.getEntityId(entity);
+        if (entityId < 0 || trainingSet.getEntityColumn(property) == null)
+            return EMPTY;
+        BitSet coverage = entityCoverages.computeIfAbsent(property, this::createEntityCoverages)[entityId];
+        return coverage != null ? coverage : EMPTY;
+    }
+
+    public BitSet getNumericCoverage(String property, LinearSelector<Float> selector) {
+        if (!selector.hasLowerBound() && !selector.hasUpperBound())
+            return numericDefinedCoverages.computeIfAbsent(property, p -> createThresholdCoverage(p, value -> true));
+        BitSet lowerCoverage = selector.hasLowerBound()
+                ? getThresholdCoverage(new Threshold(property, selector.lowerEndpoint(), selector.lowerBoundType(), true))
+                : null;
+        BitSet upperCoverage = selector.hasUpperBound()
+                ? getThresholdCoverage(new Threshold(property, selector.upperEndpoint(), selector.upperBoundType(), false))
+                : null;
+        if (lowerCoverage == null)
+            return upperCoverage;
+        if (upperCoverage == null)
+            return lowerCoverage;
+        BitSet coverage = (BitSet) lowerCoverage.clone();
+        coverage.and(upperCoverage);
+        return coverage;
+    }
+
+    public BitSet getCoverage(Complex complex) {
+        return getCachedComplex(complex).coverage;
+    }
+
+    public int getCoveredCount(Complex complex) {
+        return getCachedComplex(complex).coveredCount;
+    }
+
+    public int getCoveredCount(Complex complex, Category category) {
+        CategoryClasses classes = categoryClasses.computeIfAbsent(category.getPredicate(), this::createCategoryClasses);
+        int entityId = trainingSet.getEntityId(category.getEntity());
+        int classIndex = entityId >= 0 ? classes.classIndexes[entityId] : -1;
+        if (classIndex < 0)
+            return 0;
+        CachedComplex cachedComplex = getCachedComplex(complex);
+        return cachedComplex.classCounts.computeIfAbsent(category.getPredicate(),
+                predicate -> countClasses(cachedComplex.coverage, classes))[classIndex];
+    }
+
+    public CacheStats getCacheStats() {
+        return complexCache.stats();
+    }
+
+    private CachedComplex getCachedComplex(Complex complex) {
+        try {
+            return complexCache.get(complex.getKey(), () -> new CachedComplex(complex.computeCoverage(this)));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private BitSet getThresholdCoverage(Threshold threshold) {
+        return thresholdCoverages.computeIfAbsent(threshold,
+                t -> createThresholdCoverage(t.property, t::isSatisfiedBy));
+    }
+
+    private BitSet[] createEntityCoverages(String property) {
+        EntityColumn column = trainingSet.getEntityColumn(property);
+        BitSet[] coverages = new BitSet[trainingSet.getEntitiesCount()];
+        for (int row = 0; row < trainingSet.size(); row++) {
+            for (int position = column.getStart(row); position < column.getEnd(row); position++) {
+                int entityId = column.getValue(position);
+                if (coverages[entityId] == null)
+                    coverages[entityId] = new BitSet(trainingSet.size());
+                coverages[entityId].set(row);
+            }
+        }
+        return coverages;
+    }
+
+    private CategoryClasses createCategoryClasses(String predicate) {
+        EntityColumn column = trainingSet.getCategoryColumn(predicate);
+        int[] classIndexes = new int[trainingSet.getEntitiesCount()];
+        Arrays.fill(classIndexes, -1);
+        int classesCount = 0;
+        for (int row = 0; column != null && row < trainingSet.size(); row++) {
+            for (int position = column.getStart(row); position < column.getEnd(row); position++) {
+                int entityId = column.getValue(position);
+                if (classIndexes[entityId] < 0)
+                    classIndexes[entityId] = classesCount++;
+            }
+        }
+        return new CategoryClasses(column, classIndexes, classesCount);
+    }
+
+    private static int[] countClasses(BitSet coverage, CategoryClasses classes) {
+        int[] counts = new int[classes.classesCount];
+        for (int row = coverage.nextSetBit(0); row >= 0; row = coverage.nextSetBit(row + 1)) {
+            for (int position = classes.column.getStart(row); position < classes.column.getEnd(row); position++)
+                counts[classes.classIndexes[classes.column.getValue(position)]]++;
+        }
+        return counts;
+    }
+
+    private BitSet createThresholdCoverage(String property, FloatPredicate predicate) {
+        float[] column = trainingSet.getNumericColumn(property);
+        BitSet coverage = new BitSet(trainingSet.size());
+        if (column == null)
+            return coverage;
+        for (int row = 0; row < column.length; row++) {
+            if (!Float.isNaN(column[row]) && predicate.test(column[row]))
+                coverage.set(row);
+        }
+        return coverage;
+    }
+
+    private static class CachedComplex {
+
+        private final BitSet coverage;
+        private final int coveredCount;
+        private final Map<String, int[]> classCounts = new ConcurrentHashMap<>(1);
+
+        private CachedComplex(BitSet coverage) {
+            this.coverage = coverage;
+            this.coveredCount = coverage.cardinality();
+        }
+
+        private int weight() {
+            return coverage.size() / Byte.SIZE + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    /**
+     * Category values of a predicate numbered densely, so class counts of a complex take one small array.
+     */
+    private static class CategoryClasses {
+
+        private final EntityColumn column;
+        private final int[] classIndexes;
+        private final int classesCount;
+
+        private CategoryClasses(EntityColumn column, int[] classIndexes, int classesCount) {
+            this.column = column;
+            this.classIndexes = classIndexes;
+            this.classesCount = classesCount;
+        }
+    }
+
+    private interface FloatPredicate {
+        boolean test(float value);
+    }
+
+    private static class Threshold {
+
+        private final String property;
+        private final float endpoint;
+        private final BoundType boundType;
+        private final boolean lower;
+
+        private Threshold(String property, float endpoint, BoundType boundType, boolean lower) {
+            this.property = property;
+            this.endpoint = endpoint;
+            this.boundType = boundType;
+            this.lower = lower;
+        }
+
+        private boolean isSatisfiedBy(float value) {
+            int comparison = Float.compare(value, endpoint);
+            if (boundType == BoundType.CLOSED && comparison == 0)
+                return true;
+            return lower ? comparison > 0 : comparison < 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(property, endpoint, boundType, lower);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Threshold other = (Threshold) obj;
+            return Float.compare(endpoint, other.endpoint) == 0
+                    && lower == other.lower
+                    && boundType == other.boundType
+                    && property.equals(other.property);
+        }
+    }
+}
@@ -80,6 +80,10 @@ public class LinearSelector<T extends Comparable<?>> implements Selector<T> {
         return range.upperEndpoint();
     }
 
+    Range<T> getRange() {
+        return range;
+    }
+
     @Override
     public boolean contains(Selector selector) {
         if (selector == null && !range.hasUpperBound() && !range.hasLowerBound())
@@ -96,6 +100,20 @@ public class LinearSelector<T extends Comparable<?>> implements Selector<T> {
         return range.toString();
     }
 
+    @Override
+    public int hashCode() {
+        return range.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        return range.equals(((LinearSelector) obj).range);
+    }
+
     @Override
     @SuppressWarnings({"rawtypes", "unchecked"})
     public Selector conjunction(Selector selector) {
@@ -85,6 +85,10 @@ public class Rule {
         this.headAtoms.addAll(headAtoms);
     }
 
+    public RuleSignature getSignature() {
+        return new RuleSignature(declarationAtoms, bodyAtoms, headAtoms);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
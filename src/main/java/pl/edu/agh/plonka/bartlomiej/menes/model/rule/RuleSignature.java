@@ -0,0 +1,47 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Canonical content of a {@link Rule}, independent of its name: the set of body atoms, including declaration atoms,
+ * and the set of head atoms. Rules with equal signatures have the same consequences, whether they were learned or
+ * loaded from the ontology. Atoms added to the rule later don't change its signature.
+ */
+public final class RuleSignature {
+
+    private final Set<AbstractAtom> bodyAtoms;
+    private final Set<AbstractAtom> headAtoms;
+    private final int hashCode;
+
+    RuleSignature(Collection<AbstractAtom> declarationAtoms, Collection<AbstractAtom> bodyAtoms,
+                  Collection<AbstractAtom> headAtoms) {
+        this.bodyAtoms = new HashSet<>(declarationAtoms);
+        this.bodyAtoms.addAll(bodyAtoms);
+        this.headAtoms = new HashSet<>(headAtoms);
+        this.hashCode = 31 * this.bodyAtoms.hashCode() + this.headAtoms.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        RuleSignature other = (RuleSignature) obj;
+        return hashCode == other.hashCode
+                && bodyAtoms.equals(other.bodyAtoms)
+                && headAtoms.equals(other.headAtoms);
+    }
+
+    @Override
+    public String toString() {
+        return bodyAtoms + " -> " + headAtoms;
+    }
+}
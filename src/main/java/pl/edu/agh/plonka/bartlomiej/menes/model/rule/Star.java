@@ -1,10 +1,9 @@
 package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
 
 import org.slf4j.Logger;
-import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.*;
+import java.util.stream.IntStream;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -12,38 +11,99 @@ public class Star extends ArrayList<Complex> {
 
     private static final Logger LOG = getLogger(Star.class);
 
+    private static final int CHUNK_SIZE = 256;
+
     public Star() {
         add(new Complex());
     }
 
-    public boolean isPatientCovered(Patient patient) {
-        for (Complex complex : this) {
-            if (complex.isPatientCovered(patient))
-                return true;
-        }
-        return false;
+    public BitSet getCoverage(CoverageIndex index) {
+        BitSet coverage = new BitSet(index.size());
+        for (Complex complex : this)
+            coverage.or(complex.getCoverage(index));
+        return coverage;
+    }
+
+    /**
+     * Replaces the star with the best {@code width} conjunctions of its complexes with {@code otherComplexes}.
+     * Conjunctions are generated and evaluated chunk by chunk and offered to a bounded queue in generation
+     * order, so only O(width) complexes are kept. A conjunction narrower than a kept one is dropped and kept
+     * conjunctions narrower than an offered one are removed. Equally evaluated complexes keep generation order.
+     */
+    public void intersection(Collection<Complex> otherComplexes, ComplexComparator comparator, int width) {
+        intersection(otherComplexes, comparator, width, Integer.MAX_VALUE);
     }
 
-    public void intersection(Collection<Complex> otherComplexes) {
+    /**
+     * Like {@link #intersection(Collection, ComplexComparator, int)}, but conjunctions with more than
+     * {@code maxSelectors} selectors are skipped. If all of them are skipped the star is left unchanged.
+     *
+     * @return whether the star was replaced
+     */
+    public boolean intersection(Collection<Complex> otherComplexes, ComplexComparator comparator, int width,
+                                int maxSelectors) {
         if (isEmpty())
-            addAll(otherComplexes);
-        Collection<Complex> newComplexes = Complex.intersection(this, otherComplexes);
-        //TODO check if it's ok
+            add(new Complex());
+        Complex[] complexes1 = toArray(new Complex[0]);
+        Complex[] complexes2 = otherComplexes.toArray(new Complex[0]);
+        long candidatesCount = (long) complexes1.length * complexes2.length;
+
+        Comparator<Candidate> order = Comparator.<Candidate, Complex>comparing(candidate -> candidate.complex, comparator)
+                .thenComparing(Comparator.<Candidate>comparingLong(candidate -> candidate.sequence).reversed());
+        PriorityQueue<Candidate> beam = new PriorityQueue<>(width + 1, order);
+        Complex[] chunk = new Complex[CHUNK_SIZE];
+        for (long start = 0; start < candidatesCount; start += CHUNK_SIZE) {
+            long chunkStart = start;
+            int chunkSize = (int) Math.min(CHUNK_SIZE, candidatesCount - start);
+            IntStream.range(0, chunkSize).parallel().forEach(i -> {
+                long sequence = chunkStart + i;
+                Complex complex = Complex.conjunction(
+                        complexes1[(int) (sequence / complexes2.length)],
+                        complexes2[(int) (sequence % complexes2.length)]);
+                if (complex.getSelectorsCount() > maxSelectors) {
+                    chunk[i] = null;
+                    return;
+                }
+                comparator.evaluate(complex);
+                chunk[i] = complex;
+            });
+            for (int i = 0; i < chunkSize; i++) {
+                if (chunk[i] != null)
+                    offer(beam, new Candidate(chunk[i], chunkStart + i), order, width);
+            }
+        }
+        if (beam.isEmpty())
+            return false;
+
+        List<Candidate> candidates = new ArrayList<>(beam);
+        candidates.sort(order.reversed());
         clear();
-        addAll(newComplexes);
+        candidates.forEach(candidate -> add(candidate.complex));
+        return true;
     }
 
-    public void deleteNarrowComplexes() {
-        Collection<Complex> toRemove = new ArrayList<>();
-        for (Complex c1 : this)
-            for (Complex c2 : this)
-                if (c1 != c2 && c1.contains(c2))
-                    toRemove.add(c2);
-        removeAll(toRemove);
+    private static void offer(PriorityQueue<Candidate> beam, Candidate candidate, Comparator<Candidate> order, int width) {
+        for (Candidate kept : beam) {
+            if (kept.complex.contains(candidate.complex))
+                return;
+        }
+        beam.removeIf(kept -> candidate.complex.contains(kept.complex));
+        if (beam.size() < width) {
+            beam.add(candidate);
+        } else if (order.compare(candidate, beam.peek()) > 0) {
+            beam.poll();
+            beam.add(candidate);
+        }
     }
 
-    public void leaveFirstElements(int n) {
-        subList(Math.min(n, size()), size()).clear();
-    }
+    private static class Candidate {
 
+        private final Complex complex;
+        private final long sequence;
+
+        private Candidate(Complex complex, long sequence) {
+            this.complex = complex;
+            this.sequence = sequence;
+        }
+    }
 }
@@ -0,0 +1,242 @@
+package pl.edu.agh.plonka.bartlomiej.menes.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
+import pl.edu.agh.plonka.bartlomiej.menes.service.OntologyWrapper;
+import pl.edu.agh.plonka.bartlomiej.menes.service.PatientsService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * HTTP server bound to localhost, classifying patients with the current rules of a {@link PatientsService}.
+ * <p>
+ * {@code POST /classify} takes patient properties as a form, e.g. {@code hasSymptom=Cough&hasSymptom=Fever&age=10},
+ * and returns the inferred entity properties as JSON, e.g. {@code {"hasDisease":["Cold"]}}.
+ * {@code GET /stats} returns request counts and latency percentiles.
+ * <p>
+ * Requests are classified in micro-batches by a single thread, which is the only one using the service while the
+ * server runs. When too many requests are waiting, new ones are rejected with 503, requests not classified within
+ * the request timeout fail with 504.
+ */
+public class ClassificationServer {
+
+    private static final Logger LOG = getLogger(ClassificationServer.class);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    private final PatientsService patientsService;
+    private final ServerConfig config;
+    private final MicroBatcher<Patient, Map<String, Set<Entity>>> batcher;
+    private final LatencyRecorder latencies;
+    private final Set<String> entityProperties;
+    private final Set<String> numericProperties;
+    private final Set<String> stringProperties;
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+
+    public ClassificationServer(PatientsService patientsService, ServerConfig config) {
+        this.patientsService = patientsService;
+        this.config = config;
+        this.batcher = new MicroBatcher<>(patientsService::classify, config.getMaxBatchSize(), config.getMaxWait(),
+                config.getQueueCapacity());
+        this.latencies = new LatencyRecorder(config.getLatencySamples());
+        OntologyWrapper ontology = patientsService.getOntology();
+        this.entityProperties = ids(ontology.getEntityProperties());
+        this.numericProperties = ids(ontology.getNumericProperties());
+        this.stringProperties = ids(ontology.getStringProperties());
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null)
+            throw new IllegalStateException("SERVER_ALREADY_STARTED");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort()), 0);
+        handlerExecutor = Executors.newFixedThreadPool(config.getHandlerThreads());
+        server.setExecutor(handlerExecutor);
+        server.createContext("/classify", this::handleClassify);
+        server.createContext("/stats", this::handleStats);
+        batcher.start();
+        server.start();
+        LOG.info("Classification server listening on {}", server.getAddress());
+    }
+
+    public synchronized void stop() {
+        if (server == null)
+            return;
+        server.stop(0);
+        batcher.stop();
+        handlerExecutor.shutdownNow();
+        server = null;
+    }
+
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : config.getPort();
+    }
+
+    private void handleClassify(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "{\"error\":\"METHOD_NOT_ALLOWED\"}");
+                return;
+            }
+            Patient patient;
+            try {
+                patient = parsePatient(readBody(exchange));
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, format("{\"error\":%s}", quote(e.getMessage())));
+                return;
+            }
+            Future<Map<String, Set<Entity>>> result;
+            try {
+                result = batcher.submit(patient);
+            } catch (RejectedExecutionException e) {
+                send(exchange, 503, "{\"error\":\"OVERLOADED\"}");
+                return;
+            }
+            try {
+                send(exchange, 200, toJson(result.get(config.getRequestTimeout(), MILLISECONDS)));
+            } catch (ExecutionException | CancellationException e) {
+                send(exchange, 500, "{\"error\":\"CLASSIFICATION_FAILED\"}");
+            } catch (TimeoutException e) {
+                result.cancel(false);
+                send(exchange, 504, "{\"error\":\"TIMEOUT\"}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "{\"error\":\"SERVER_STOPPED\"}");
+            }
+        } finally {
+            latencies.record(System.nanoTime() - start);
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            long[] percentiles = latencies.percentiles(PERCENTILES);
+            long batches = batcher.getBatchesCount();
+            long processed = batcher.getProcessedCount();
+            send(exchange, 200, format(Locale.ROOT,
+                    "{\"processed\":%d,\"rejected\":%d,\"queued\":%d,\"batches\":%d,\"averageBatchSize\":%.2f,"
+                            + "\"latencyMillis\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}}",
+                    processed, batcher.getRejectedCount(), batcher.getQueueSize(), batches,
+                    batches > 0 ? (double) processed / batches : 0,
+                    toMillis(percentiles[0]), toMillis(percentiles[1]), toMillis(percentiles[2]),
+                    toMillis(percentiles[3])));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Values of entity properties are entity IDs, values of numeric properties are numbers and other values are
+     * taken as strings.
+     */
+    private Patient parsePatient(String form) {
+        OntologyWrapper ontology = patientsService.getOntology();
+        Patient patient = new Patient(null);
+        for (String parameter : form.split("&")) {
+            if (parameter.isEmpty())
+                continue;
+            int separator = parameter.indexOf('=');
+            String property = decode(separator < 0 ? parameter : parameter.substring(0, separator));
+            String value = separator < 0 ? "" : decode(parameter.substring(separator + 1));
+            if (entityProperties.contains(property)) {
+                Entity entity = ontology.findEntity(value);
+                if (entity == null)
+                    throw new IllegalArgumentException(format("UNKNOWN_ENTITY %s", value));
+                patient.setEntityProperty(property, entity);
+            } else if (numericProperties.contains(property)) {
+                try {
+                    patient.setNumericProperty(property, Float.parseFloat(value));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(format("INVALID_NUMBER %s", value));
+                }
+            } else if (stringProperties.contains(property)) {
+                patient.setStringProperty(property, value);
+            } else {
+                throw new IllegalArgumentException(format("UNKNOWN_PROPERTY %s", property));
+            }
+        }
+        return patient;
+    }
+
+    private static Set<String> ids(Collection<? extends Entity> entities) {
+        Set<String> ids = new HashSet<>();
+        entities.forEach(entity -> ids.add(entity.getID()));
+        return ids;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toJson(Map<String, Set<Entity>> properties) {
+        StringJoiner json = new StringJoiner(",", "{", "}");
+        new TreeMap<>(properties).forEach((property, entities) -> {
+            if (entities.isEmpty())
+                return;
+            StringJoiner values = new StringJoiner(",", "[", "]");
+            entities.stream().map(Entity::getID).sorted().forEach(id -> values.add(quote(id)));
+            json.add(quote(property) + ":" + values);
+        });
+        return json.toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder str = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                str.append('\\').append(c);
+            else if (c < 0x20)
+                str.append(format("\\u%04x", (int) c));
+            else
+                str.append(c);
+        }
+        return str.append('"').toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
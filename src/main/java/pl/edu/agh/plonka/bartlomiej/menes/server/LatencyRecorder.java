@@ -0,0 +1,41 @@
+package pl.edu.agh.plonka.bartlomiej.menes.server;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the latest requests in a ring buffer, percentiles are computed from them on demand.
+ */
+class LatencyRecorder {
+
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    LatencyRecorder(int capacity) {
+        samples = new long[capacity];
+    }
+
+    synchronized void record(long latencyNanos) {
+        samples[next] = latencyNanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length)
+            count++;
+    }
+
+    /**
+     * Latencies in nanoseconds at the given percentiles, 0 if nothing was recorded.
+     */
+    long[] percentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        long[] values = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length && sorted.length > 0; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * sorted.length);
+            values[i] = sorted[Math.min(Math.max(rank - 1, 0), sorted.length - 1)];
+        }
+        return values;
+    }
+}
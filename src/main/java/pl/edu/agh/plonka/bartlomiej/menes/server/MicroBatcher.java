@@ -0,0 +1,159 @@
+package pl.edu.agh.plonka.bartlomiej.menes.server;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Coalesces submitted items into batches processed one at a time by a single worker thread. A batch is processed
+ * when it is full or when its first item has waited for the max wait. Items are rejected when the queue is full.
+ */
+class MicroBatcher<T, R> {
+
+    private static final Logger LOG = getLogger(MicroBatcher.class);
+
+    private final Function<List<T>, List<R>> processor;
+    private final BlockingQueue<Request<T, R>> queue;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Thread worker;
+    private final AtomicLong batchesCount = new AtomicLong();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param processor returns results in the order of the items
+     */
+    MicroBatcher(Function<List<T>, List<R>> processor, int maxBatchSize, long maxWaitMillis, int queueCapacity) {
+        this.processor = processor;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.worker = new Thread(this::run, "micro-batcher");
+        this.worker.setDaemon(true);
+    }
+
+    void start() {
+        worker.start();
+    }
+
+    /**
+     * Stops the worker, items not processed yet are cancelled.
+     */
+    void stop() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Request<T, R>> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.forEach(request -> request.result.cancel(false));
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue is full or the batcher is stopped
+     */
+    CompletableFuture<R> submit(T item) {
+        Request<T, R> request = new Request<>(item);
+        if (!running || !queue.offer(request)) {
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("QUEUE_FULL");
+        }
+        return request.result;
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    long getBatchesCount() {
+        return batchesCount.get();
+    }
+
+    long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                process(nextBatch());
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private List<Request<T, R>> nextBatch() throws InterruptedException {
+        List<Request<T, R>> batch = new ArrayList<>(maxBatchSize);
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + maxWaitNanos;
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        while (batch.size() < maxBatchSize) {
+            Request<T, R> request = queue.poll(deadline - System.nanoTime(), NANOSECONDS);
+            if (request == null)
+                break;
+            batch.add(request);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+        return batch;
+    }
+
+    /**
+     * Counts are updated before the results are completed, so they include the batch once its results are seen.
+     * Any failure of the processor, including errors, fails the whole batch and leaves the worker running.
+     * Requests cancelled while queued, e.g. timed out by the client, are not processed.
+     */
+    private void process(List<Request<T, R>> batch) {
+        batch.removeIf(request -> request.result.isCancelled());
+        if (batch.isEmpty())
+            return;
+        List<T> items = new ArrayList<>(batch.size());
+        batch.forEach(request -> items.add(request.item));
+        List<R> results = null;
+        Throwable failure = null;
+        try {
+            results = processor.apply(items);
+            if (results.size() != batch.size())
+                throw new IllegalStateException(format("INVALID_RESULTS_COUNT %d", results.size()));
+        } catch (Throwable e) {
+            failure = e;
+        }
+        batchesCount.incrementAndGet();
+        processedCount.addAndGet(batch.size());
+        if (failure != null) {
+            LOG.error("Batch of {} items failed", batch.size(), failure);
+            for (Request<T, R> request : batch)
+                request.result.completeExceptionally(failure);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++)
+            batch.get(i).result.complete(results.get(i));
+    }
+
+    private static class Request<T, R> {
+
+        private final T item;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private Request(T item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package pl.edu.agh.plonka.bartlomiej.menes.server;
+
+import static java.lang.String.format;
+
+/**
+ * Parameters of the {@link ClassificationServer}. Times are in milliseconds.
+ */
+public class ServerConfig {
+
+    // 0 for any free port
+    private int port = 8080;
+    private int handlerThreads = 4;
+    private int maxBatchSize = 64;
+    private long maxWait = 5;
+    private int queueCapacity = 1024;
+    private long requestTimeout = 10_000;
+    private int latencySamples = 10_000;
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        if (port < 0 || port > 65535)
+            throw new IllegalArgumentException(format("INVALID_PORT %d", port));
+        this.port = port;
+    }
+
+    public int getHandlerThreads() {
+        return handlerThreads;
+    }
+
+    public void setHandlerThreads(int handlerThreads) {
+        if (handlerThreads < 1)
+            throw new IllegalArgumentException(format("INVALID_HANDLER_THREADS %d", handlerThreads));
+        this.handlerThreads = handlerThreads;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException(format("INVALID_MAX_BATCH_SIZE %d", maxBatchSize));
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * How long the first request of a batch waits for more requests before the batch is classified.
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait) {
+        if (maxWait < 0)
+            throw new IllegalArgumentException(format("INVALID_MAX_WAIT %d", maxWait));
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Maximal number of requests waiting for classification, further requests are rejected with 503.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException(format("INVALID_QUEUE_CAPACITY %d", queueCapacity));
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * How long a request waits for its classification before it fails with 504.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(long requestTimeout) {
+        if (requestTimeout < 1)
+            throw new IllegalArgumentException(format("INVALID_REQUEST_TIMEOUT %d", requestTimeout));
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Number of the latest requests latency percentiles are computed from.
+     */
+    public int getLatencySamples() {
+        return latencySamples;
+    }
+
+    public void setLatencySamples(int latencySamples) {
+        if (latencySamples < 1)
+            throw new IllegalArgumentException(format("INVALID_LATENCY_SAMPLES %d", latencySamples));
+        this.latencySamples = latencySamples;
+    }
+}
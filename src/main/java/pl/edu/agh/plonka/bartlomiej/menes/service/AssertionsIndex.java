@@ -0,0 +1,71 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static org.semanticweb.owlapi.model.parameters.Imports.EXCLUDED;
+
+/**
+ * Asserted class and property assertions of individuals, collected in a single pass over the ABox axioms.
+ * Not updated after creation.
+ */
+class AssertionsIndex {
+
+    private final Map<OWLClass, Set<OWLIndividual>> instances = new HashMap<>();
+    private final Map<OWLIndividual, Set<OWLClass>> types = new HashMap<>();
+    private final Map<OWLIndividual, Map<OWLDataPropertyExpression, Set<OWLLiteral>>> dataValues = new HashMap<>();
+    private final Map<OWLIndividual, Map<OWLObjectPropertyExpression, Set<OWLIndividual>>> objectValues = new HashMap<>();
+
+    AssertionsIndex(OWLOntology ontology) {
+        for (OWLAxiom axiom : ontology.getABoxAxioms(EXCLUDED)) {
+            if (axiom instanceof OWLClassAssertionAxiom)
+                addClassAssertion((OWLClassAssertionAxiom) axiom);
+            else if (axiom instanceof OWLDataPropertyAssertionAxiom)
+                addDataPropertyAssertion((OWLDataPropertyAssertionAxiom) axiom);
+            else if (axiom instanceof OWLObjectPropertyAssertionAxiom)
+                addObjectPropertyAssertion((OWLObjectPropertyAssertionAxiom) axiom);
+        }
+    }
+
+    Set<OWLIndividual> getInstances(OWLClass owlClass) {
+        return instances.getOrDefault(owlClass, emptySet());
+    }
+
+    Set<OWLClass> getTypes(OWLIndividual individual) {
+        return types.getOrDefault(individual, emptySet());
+    }
+
+    Set<OWLLiteral> getDataPropertyValues(OWLIndividual individual, OWLDataPropertyExpression property) {
+        return dataValues.getOrDefault(individual, emptyMap()).getOrDefault(property, emptySet());
+    }
+
+    Set<OWLIndividual> getObjectPropertyValues(OWLIndividual individual, OWLObjectPropertyExpression property) {
+        return objectValues.getOrDefault(individual, emptyMap()).getOrDefault(property, emptySet());
+    }
+
+    private void addClassAssertion(OWLClassAssertionAxiom axiom) {
+        if (axiom.getClassExpression().isAnonymous())
+            return;
+        OWLClass owlClass = axiom.getClassExpression().asOWLClass();
+        instances.computeIfAbsent(owlClass, c -> new HashSet<>()).add(axiom.getIndividual());
+        types.computeIfAbsent(axiom.getIndividual(), i -> new HashSet<>()).add(owlClass);
+    }
+
+    private void addDataPropertyAssertion(OWLDataPropertyAssertionAxiom axiom) {
+        dataValues.computeIfAbsent(axiom.getSubject(), i -> new HashMap<>())
+                .computeIfAbsent(axiom.getProperty(), p -> new HashSet<>())
+                .add(axiom.getObject());
+    }
+
+    private void addObjectPropertyAssertion(OWLObjectPropertyAssertionAxiom axiom) {
+        objectValues.computeIfAbsent(axiom.getSubject(), i -> new HashMap<>())
+                .computeIfAbsent(axiom.getProperty(), p -> new HashSet<>())
+                .add(axiom.getObject());
+    }
+}
@@ -0,0 +1,148 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import com.google.common.collect.Range;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.*;
+
+import java.util.*;
+
+import static pl.edu.agh.plonka.bartlomiej.menes.utils.Constants.*;
+
+/**
+ * Conditions and consequences of a rule about a single patient: a Patient class atom, entity properties of the
+ * patient, numeric properties compared with constants and entity properties of the patient in the head.
+ */
+class CompiledRule {
+
+    final Rule rule;
+    final Map<String, Set<Entity>> entityConditions = new HashMap<>();
+    final List<NumericCondition> numericConditions = new ArrayList<>();
+    final Set<String> existenceConditions = new HashSet<>();
+    final Map<String, Set<Entity>> head = new HashMap<>();
+
+    private CompiledRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Returns null if the rule is not about a single patient.
+     */
+    @SuppressWarnings("rawtypes")
+    static CompiledRule compile(Rule rule) {
+        Collection<AbstractAtom> bodyAtoms = new ArrayList<>(rule.getDeclarationAtoms());
+        bodyAtoms.addAll(rule.getBodyAtoms());
+
+        Variable patientVariable = null;
+        for (AbstractAtom atom : bodyAtoms) {
+            if (atom instanceof ClassDeclarationAtom) {
+                ClassDeclarationAtom classAtom = (ClassDeclarationAtom) atom;
+                if (patientVariable != null || classAtom.getClassEntity() == null
+                        || !PATIENT_CLASS.equals(classAtom.getClassEntity().getID())
+                        || !(classAtom.getArgument() instanceof Variable))
+                    return null;
+                patientVariable = (Variable) classAtom.getArgument();
+            }
+        }
+        if (patientVariable == null)
+            return null;
+
+        CompiledRule compiledRule = new CompiledRule(rule);
+        Map<Variable, String> valueVariables = new HashMap<>();
+        Map<Variable, Range<Float>> valueRanges = new HashMap<>();
+        List<TwoArgumentsAtom> builtInAtoms = new ArrayList<>();
+        for (AbstractAtom atom : bodyAtoms) {
+            if (atom instanceof ClassDeclarationAtom)
+                continue;
+            if (!(atom instanceof TwoArgumentsAtom))
+                return null;
+            TwoArgumentsAtom twoArgumentsAtom = (TwoArgumentsAtom) atom;
+            if (SWRLB_PREFIX.equals(atom.getPrefix())) {
+                builtInAtoms.add(twoArgumentsAtom);
+            } else if (!patientVariable.equals(twoArgumentsAtom.getArgument1())) {
+                return null;
+            } else if (twoArgumentsAtom.getArgument2() instanceof Entity) {
+                compiledRule.entityConditions
+                        .computeIfAbsent(atom.getPredicate(), p -> new HashSet<>())
+                        .add((Entity) twoArgumentsAtom.getArgument2());
+            } else if (twoArgumentsAtom.getArgument2() instanceof Variable
+                    && !patientVariable.equals(twoArgumentsAtom.getArgument2())) {
+                if (valueVariables.put((Variable) twoArgumentsAtom.getArgument2(), atom.getPredicate()) != null)
+                    return null;
+            } else {
+                return null;
+            }
+        }
+        for (TwoArgumentsAtom atom : builtInAtoms) {
+            if (!valueVariables.containsKey(atom.getArgument1()) || !(atom.getArgument2() instanceof Number))
+                return null;
+            Range<Float> range = createRange(atom.getPredicate(), ((Number) atom.getArgument2()).floatValue());
+            if (range == null)
+                return null;
+            valueRanges.merge((Variable) atom.getArgument1(), range, CompiledRule::intersection);
+        }
+        valueVariables.forEach((variable, property) -> {
+            Range<Float> range = valueRanges.get(variable);
+            if (range == null)
+                compiledRule.existenceConditions.add(property);
+            else
+                compiledRule.numericConditions.add(new NumericCondition(property, range));
+        });
+
+        for (AbstractAtom atom : rule.getHeadAtoms()) {
+            if (!(atom instanceof TwoArgumentsAtom) || SWRLB_PREFIX.equals(atom.getPrefix()))
+                return null;
+            TwoArgumentsAtom twoArgumentsAtom = (TwoArgumentsAtom) atom;
+            if (!patientVariable.equals(twoArgumentsAtom.getArgument1())
+                    || !(twoArgumentsAtom.getArgument2() instanceof Entity))
+                return null;
+            compiledRule.head
+                    .computeIfAbsent(atom.getPredicate(), p -> new HashSet<>())
+                    .add((Entity) twoArgumentsAtom.getArgument2());
+        }
+        return compiledRule.head.isEmpty() ? null : compiledRule;
+    }
+
+    /**
+     * False if some numeric condition can't be satisfied by any value.
+     */
+    boolean isSatisfiable() {
+        return numericConditions.stream().noneMatch(condition -> condition.range.isEmpty());
+    }
+
+    private static Range<Float> createRange(String predicate, float bound) {
+        switch (predicate) {
+            case EQUAL_PROPERTY:
+                return Range.singleton(bound);
+            case GREATER_THAN_PROPERTY:
+                return Range.greaterThan(bound);
+            case GREATER_THAN_OR_EQUAL_PROPERTY:
+                return Range.atLeast(bound);
+            case LESS_THAN_PROPERTY:
+                return Range.lessThan(bound);
+            case LESS_THAN_OR_EQUAL_PROPERTY:
+                return Range.atMost(bound);
+            default:
+                return null;
+        }
+    }
+
+    private static Range<Float> intersection(Range<Float> range1, Range<Float> range2) {
+        if (range1.isConnected(range2))
+            return range1.intersection(range2);
+        return Range.closedOpen(0f, 0f);
+    }
+
+    /**
+     * Some value of a numeric property within the range.
+     */
+    static class NumericCondition {
+
+        final String property;
+        final Range<Float> range;
+
+        private NumericCondition(String property, Range<Float> range) {
+            this.property = property;
+            this.range = range;
+        }
+    }
+}
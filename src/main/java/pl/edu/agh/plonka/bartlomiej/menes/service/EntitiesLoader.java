@@ -8,15 +8,16 @@ import org.slf4j.Logger;
 import pl.edu.agh.plonka.bartlomiej.menes.model.*;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.toSet;
 import static org.slf4j.LoggerFactory.getLogger;
 import static pl.edu.agh.plonka.bartlomiej.menes.model.Property.isBooleanProperty;
 import static pl.edu.agh.plonka.bartlomiej.menes.model.Property.isNumericProperty;
-import static pl.edu.agh.plonka.bartlomiej.menes.utils.Others.findEntity;
 
 class EntitiesLoader {
 
@@ -25,44 +26,53 @@ class EntitiesLoader {
     private final OWLOntology ontology;
     private final OWLObjectRenderer renderer;
     private final OWLDataFactory factory;
-    private final OWLReasoner reasoner;
+    private final Supplier<OWLReasoner> reasoner;
     private final OntologyProperties ontologyProperties;
+    private final EntityRegistry registry;
+    private final boolean useReasoner;
 
-    EntitiesLoader(OWLOntology ontology, OWLObjectRenderer renderer, OWLDataFactory factory, OWLReasoner reasoner, OntologyProperties ontologyProperties) {
+    /**
+     * @param useReasoner whether types of instances and domains of properties are inferred by the reasoner instead of
+     *                    taken from the asserted axioms, with asserted superclasses and super properties
+     */
+    EntitiesLoader(OWLOntology ontology, OWLObjectRenderer renderer, OWLDataFactory factory, Supplier<OWLReasoner> reasoner,
+                   OntologyProperties ontologyProperties, EntityRegistry registry, boolean useReasoner) {
         this.ontology = ontology;
         this.renderer = renderer;
         this.factory = factory;
         this.reasoner = reasoner;
         this.ontologyProperties = ontologyProperties;
+        this.registry = registry;
+        this.useReasoner = useReasoner;
     }
 
-    public Set<OntologyClass> loadClasses() {
-        return ontology.getClassesInSignature()
+    public void loadClasses() {
+        ontology.getClassesInSignature()
                 .stream()
                 .map(this::createClass)
-                .collect(toSet());
+                .forEach(registry::registerClass);
     }
 
-    public Set<Entity> loadInstances(Set<OntologyClass> classes) {
-        return ontology.getIndividualsInSignature()
+    public void loadInstances(AssertionsIndex assertions) {
+        ontology.getIndividualsInSignature()
                 .stream()
-                .map(individual -> loadInstance(individual, classes))
-                .collect(toSet());
+                .map(individual -> loadInstance(individual, assertions))
+                .forEach(registry::registerEntity);
     }
 
-    public Properties loadProperties(Set<OntologyClass> classes) {
+    public Properties loadProperties() {
         Properties properties = new Properties();
-        ontology.getObjectPropertiesInSignature().forEach(property -> fillProperties(property, classes, properties));
+        ontology.getObjectPropertiesInSignature().forEach(property -> fillProperties(property, properties));
         ontology.getDataPropertiesInSignature().forEach(property -> fillProperties(property, properties));
         return properties;
     }
 
-    private void fillProperties(OWLObjectProperty owlProperty, Set<OntologyClass> classes, Properties properties) {
+    private void fillProperties(OWLObjectProperty owlProperty, Properties properties) {
         String propertyName = renderer.render(owlProperty);
         if (!validateObjectProperty(propertyName, owlProperty))
             return;
 
-        Set<OntologyClass> rangeTypes = getObjectPropertyRangeTypes(owlProperty, classes);
+        Set<OntologyClass> rangeTypes = getObjectPropertyRangeTypes(owlProperty);
 
         ObjectProperty property = new ObjectProperty(propertyName);
         property.setRanges(rangeTypes);
@@ -84,11 +94,17 @@ class EntitiesLoader {
     }
 
     private boolean validateDataProperty(String propertyName, OWLDataProperty owlDataProperty) {
-        if (!reasoner.getDataPropertyDomains(owlDataProperty, false).containsEntity(ontologyProperties.patientClass)) {
+        boolean patientDomain = useReasoner
+                ? reasoner.get().getDataPropertyDomains(owlDataProperty, false).containsEntity(ontologyProperties.patientClass)
+                : getAssertedDomains(owlDataProperty, new HashSet<>()).contains(ontologyProperties.patientClass);
+        if (!patientDomain) {
             LOG.warn("{} doesn't have 'Patient' domain.", propertyName);
             return false;
         }
-        if (!reasoner.getSubDataProperties(owlDataProperty, false).isSingleton()) {
+        boolean bottomProperty = useReasoner
+                ? reasoner.get().getSubDataProperties(owlDataProperty, false).isSingleton()
+                : ontology.getDataSubPropertyAxiomsForSuperProperty(owlDataProperty).isEmpty();
+        if (!bottomProperty) {
             LOG.warn("{} isn't bottom property.", propertyName);
             return false;
         }
@@ -96,17 +112,55 @@ class EntitiesLoader {
     }
 
     private boolean validateObjectProperty(String propertyName, OWLObjectProperty owlObjectProperty) {
-        if (!reasoner.getObjectPropertyDomains(owlObjectProperty, false).containsEntity(ontologyProperties.patientClass)) {
+        boolean patientDomain = useReasoner
+                ? reasoner.get().getObjectPropertyDomains(owlObjectProperty, false).containsEntity(ontologyProperties.patientClass)
+                : getAssertedDomains(owlObjectProperty, new HashSet<>()).contains(ontologyProperties.patientClass);
+        if (!patientDomain) {
             LOG.warn("{} doesn't have 'Patient' domain.", propertyName);
             return false;
         }
-        if (!reasoner.getSubObjectProperties(owlObjectProperty, false).isSingleton()) {
+        boolean bottomProperty = useReasoner
+                ? reasoner.get().getSubObjectProperties(owlObjectProperty, false).isSingleton()
+                : ontology.getObjectSubPropertyAxiomsForSuperProperty(owlObjectProperty).isEmpty();
+        if (!bottomProperty) {
             LOG.warn("{} isn't bottom property.", propertyName);
             return false;
         }
         return true;
     }
 
+    /**
+     * Named classes of asserted domains of the property and of its super properties, with their superclasses.
+     */
+    private Set<OWLClass> getAssertedDomains(OWLDataPropertyExpression property, Set<OWLDataPropertyExpression> visited) {
+        Set<OWLClass> domains = new HashSet<>();
+        if (!visited.add(property))
+            return domains;
+        ontology.getDataPropertyDomainAxioms(property.asOWLDataProperty())
+                .forEach(axiom -> addNamedConjuncts(axiom.getDomain(), domains));
+        ontology.getDataSubPropertyAxiomsForSubProperty(property.asOWLDataProperty())
+                .forEach(axiom -> domains.addAll(getAssertedDomains(axiom.getSuperProperty(), visited)));
+        return domains;
+    }
+
+    private Set<OWLClass> getAssertedDomains(OWLObjectPropertyExpression property, Set<OWLObjectPropertyExpression> visited) {
+        Set<OWLClass> domains = new HashSet<>();
+        if (property.isAnonymous() || !visited.add(property))
+            return domains;
+        ontology.getObjectPropertyDomainAxioms(property)
+                .forEach(axiom -> addNamedConjuncts(axiom.getDomain(), domains));
+        ontology.getObjectSubPropertyAxiomsForSubProperty(property)
+                .forEach(axiom -> domains.addAll(getAssertedDomains(axiom.getSuperProperty(), visited)));
+        return domains;
+    }
+
+    private void addNamedConjuncts(OWLClassExpression classExpression, Set<OWLClass> classes) {
+        classExpression.asConjunctSet()
+                .stream()
+                .filter(conjunct -> !conjunct.isAnonymous())
+                .forEach(conjunct -> addWithSuperClasses(conjunct.asOWLClass(), classes));
+    }
+
     private Set<String> getDataPropertyRangeTypes(OWLDataProperty owlDataProperty) {
         return ontology.getDataPropertyRangeAxioms(owlDataProperty)
                 .stream()
@@ -115,12 +169,12 @@ class EntitiesLoader {
                 .collect(toSet());
     }
 
-    private Set<OntologyClass> getObjectPropertyRangeTypes(OWLObjectProperty owlObjectProperty, Set<OntologyClass> classes) {
+    private Set<OntologyClass> getObjectPropertyRangeTypes(OWLObjectProperty owlObjectProperty) {
         return ontology.getObjectPropertyRangeAxioms(owlObjectProperty)
                 .stream()
                 .map(OWLPropertyRangeAxiom::getRange)
                 .map(renderer::render)
-                .map(id -> findEntity(id, classes))
+                .map(registry::findClass)
                 .filter(Objects::nonNull)
                 .collect(toSet());
     }
@@ -146,13 +200,16 @@ class EntitiesLoader {
         return propertyMap;
     }
 
-    private Entity loadInstance(OWLNamedIndividual owlInstance, Set<OntologyClass> classes) {
+    private Entity loadInstance(OWLNamedIndividual owlInstance, AssertionsIndex assertions) {
         String instanceID = renderer.render(owlInstance);
         Entity instance = new Entity(instanceID);
 
-        reasoner.getTypes(owlInstance, false).getFlattened()
+        Set<OWLClass> types = useReasoner
+                ? reasoner.get().getTypes(owlInstance, false).getFlattened()
+                : getAssertedTypes(owlInstance, assertions);
+        types
                 .stream()
-                .map(owlClass -> getOrCreateClass(owlClass, classes))
+                .map(this::getOrCreateClass)
                 .forEach(type -> {
                     type.addInstance(instance);
                     instance.addClass(type);
@@ -164,14 +221,27 @@ class EntitiesLoader {
         return instance;
     }
 
-    private OntologyClass getOrCreateClass(OWLClass owlClass, Set<OntologyClass> classes) {
-        String classID = renderer.render(owlClass);
-        OntologyClass classEntity = findEntity(classID, classes);
-        if (classEntity == null) {
-            classEntity = createClass(owlClass);
-            classes.add(classEntity);
-        }
-        return classEntity;
+    private Set<OWLClass> getAssertedTypes(OWLIndividual individual, AssertionsIndex assertions) {
+        Set<OWLClass> types = new HashSet<>();
+        types.add(factory.getOWLThing());
+        assertions.getTypes(individual).forEach(type -> addWithSuperClasses(type, types));
+        return types;
+    }
+
+    private void addWithSuperClasses(OWLClass owlClass, Set<OWLClass> types) {
+        if (!types.add(owlClass))
+            return;
+        ontology.getSubClassAxiomsForSubClass(owlClass)
+                .stream()
+                .map(OWLSubClassOfAxiom::getSuperClass)
+                .filter(superClass -> !superClass.isAnonymous())
+                .forEach(superClass -> addWithSuperClasses(superClass.asOWLClass(), types));
+        ontology.getEquivalentClassesAxioms(owlClass)
+                .forEach(axiom -> axiom.getNamedClasses().forEach(equivalentClass -> addWithSuperClasses(equivalentClass, types)));
+    }
+
+    private OntologyClass getOrCreateClass(OWLClass owlClass) {
+        return registry.getOrRegisterClass(renderer.render(owlClass), classID -> createClass(owlClass));
     }
 
     private OntologyClass createClass(OWLClass owlClass) {
@@ -0,0 +1,42 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Counts and duration of a bulk patients import.
+ */
+public class ImportSummary {
+
+    private final int patientsCount;
+    private final int axiomsCount;
+    private final long durationNanos;
+
+    ImportSummary(int patientsCount, int axiomsCount, long durationNanos) {
+        this.patientsCount = patientsCount;
+        this.axiomsCount = axiomsCount;
+        this.durationNanos = durationNanos;
+    }
+
+    public int getPatientsCount() {
+        return patientsCount;
+    }
+
+    public int getAxiomsCount() {
+        return axiomsCount;
+    }
+
+    public long getDurationMillis() {
+        return NANOSECONDS.toMillis(durationNanos);
+    }
+
+    public double getPatientsPerSecond() {
+        return patientsCount * 1e9 / Math.max(durationNanos, 1);
+    }
+
+    @Override
+    public String toString() {
+        return format("%d patients (%d axioms) in %d ms, %.1f patients/s",
+                patientsCount, axiomsCount, getDurationMillis(), getPatientsPerSecond());
+    }
+}
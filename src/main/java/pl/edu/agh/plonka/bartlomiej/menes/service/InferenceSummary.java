@@ -0,0 +1,38 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Duration of a batch inference, split into reasoner queries and filling of patients inferred properties.
+ */
+public class InferenceSummary {
+
+    private final int patientsCount;
+    private final long reasonerNanos;
+    private final long materializationNanos;
+
+    InferenceSummary(int patientsCount, long reasonerNanos, long materializationNanos) {
+        this.patientsCount = patientsCount;
+        this.reasonerNanos = reasonerNanos;
+        this.materializationNanos = materializationNanos;
+    }
+
+    public int getPatientsCount() {
+        return patientsCount;
+    }
+
+    public long getReasonerMillis() {
+        return NANOSECONDS.toMillis(reasonerNanos);
+    }
+
+    public long getMaterializationMillis() {
+        return NANOSECONDS.toMillis(materializationNanos);
+    }
+
+    @Override
+    public String toString() {
+        return format("%d patients, reasoner %d ms, materialization %d ms",
+                patientsCount, getReasonerMillis(), getMaterializationMillis());
+    }
+}
@@ -1,5 +1,6 @@
 package pl.edu.agh.plonka.bartlomiej.menes.service;
 
+import com.google.common.cache.CacheStats;
 import org.slf4j.Logger;
 import pl.edu.agh.plonka.bartlomiej.menes.exception.PartialStarCreationException;
 import pl.edu.agh.plonka.bartlomiej.menes.model.*;
@@ -7,219 +8,309 @@ import pl.edu.agh.plonka.bartlomiej.menes.model.rule.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
 
 import static com.google.common.collect.Sets.difference;
-import static com.google.common.collect.Sets.symmetricDifference;
-import static java.lang.Math.abs;
 import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.Comparator.*;
 import static java.util.stream.Collectors.toList;
 import static org.slf4j.LoggerFactory.getLogger;
-import static pl.edu.agh.plonka.bartlomiej.menes.model.rule.ComplexComparator.sortStar;
 import static pl.edu.agh.plonka.bartlomiej.menes.utils.Constants.GENERATED_RULE_PREFIX;
 
 public class MachineLearning {
 
     private static final Logger LOG = getLogger(MachineLearning.class);
 
-    // 0 for restrictive, 1 for general
-    private static final float epsilon = 0.5f;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
     private final OntologyWrapper ontology;
+    private final LearningConfig config;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private volatile CacheStats cacheStats = new CacheStats(0, 0, 0, 0, 0, 0);
+    private volatile Model model = new Model(emptySet());
 
     public MachineLearning(OntologyWrapper ontology) {
+        this(ontology, new LearningConfig());
+    }
+
+    /**
+     * Uses a pool shared by all instances when the configured parallelism is the default one, otherwise creates
+     * an own pool released by {@link #shutdown()}.
+     */
+    public MachineLearning(OntologyWrapper ontology, LearningConfig config) {
         this.ontology = ontology;
+        this.config = config;
+        this.ownExecutor = config.getParallelism() != SharedPool.INSTANCE.getParallelism();
+        this.executor = ownExecutor ? new ForkJoinPool(config.getParallelism()) : SharedPool.INSTANCE;
     }
 
+    public MachineLearning(OntologyWrapper ontology, LearningConfig config, ExecutorService executor) {
+        this.ontology = ontology;
+        this.config = config;
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    public LearningConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Complex cache statistics of the last {@link #sequentialCovering(Set, Set)} run.
+     */
+    public CacheStats getCacheStats() {
+        return cacheStats;
+    }
+
+    public void shutdown() {
+        if (ownExecutor)
+            executor.shutdown();
+    }
+
+    /**
+     * Learns rules for all categories of the given predicates. When a time budget of the config is exceeded
+     * rules found until then are returned. In incremental mode categories of the same predicates as in the previous
+     * run start from the rules learned then, see {@link LearningConfig#isIncremental()}. The training set and its
+     * coverage index are built anew in every run, also in incremental mode.
+     */
     public Collection<Rule> sequentialCovering(Set<Patient> trainingSet, Set<ObjectProperty> predicateCategories) throws Throwable {
-        ExecutorService service = Executors.newCachedThreadPool();
-        Collection<Callable<Collection<Rule>>> callables = prepareCallables(trainingSet, predicateCategories);
-        List<Future<Collection<Rule>>> futures = service.invokeAll(callables);
-        return collectResults(futures);
+        long deadline = deadline(currentTimeMillis(), config.getTotalTimeBudget());
+        PremiseProperties premiseProperties = new PremiseProperties(
+                ontology.getNumericProperties(),
+                difference(ontology.getEntityProperties(), predicateCategories));
+        CoverageIndex index = new CoverageIndex(
+                new TrainingSet(trainingSet, premiseProperties, predicateCategories), config.getCacheBytes());
+        Model previousModel = config.isIncremental() && model.predicateCategories.equals(predicateCategories)
+                ? model
+                : new Model(predicateCategories);
+        List<Category> categories = prepareCategories(index, predicateCategories);
+        Collection<Callable<List<LearnedRule>>> callables = new ArrayList<>();
+        for (Category category : categories) {
+            List<LearnedRule> previousRules = previousModel.rules.getOrDefault(category, emptyList());
+            callables.add(() -> sequentialCovering(index, category, premiseProperties, previousRules, deadline));
+        }
+        try {
+            List<Future<List<LearnedRule>>> futures = executor.invokeAll(callables);
+            return collectResults(categories, futures, new Model(predicateCategories));
+        } finally {
+            cacheStats = index.getCacheStats();
+            LOG.debug("Complex cache: {}", cacheStats);
+        }
     }
 
-    private Collection<Rule> collectResults(List<Future<Collection<Rule>>> futures) throws Throwable {
+    private Collection<Rule> collectResults(List<Category> categories, List<Future<List<LearnedRule>>> futures,
+                                            Model newModel) throws Throwable {
         Collection<Rule> rules = new HashSet<>();
-        for (Future<Collection<Rule>> future : futures) {
+        for (int i = 0; i < futures.size(); i++) {
             try {
-                rules.addAll(future.get());
+                List<LearnedRule> learnedRules = futures.get(i).get();
+                newModel.rules.put(categories.get(i), learnedRules);
+                learnedRules.forEach(learnedRule -> rules.add(learnedRule.rule));
             } catch (ExecutionException e) {
                 throw e.getCause();
             }
         }
+        model = newModel;
         return simplifyRules(rules);
     }
 
-    private Collection<Callable<Collection<Rule>>> prepareCallables(Set<Patient> trainingSet, Set<ObjectProperty> predicateCategories) {
-        Collection<Callable<Collection<Rule>>> callables = new ArrayList<>();
-        PremiseProperties premiseProperties = new PremiseProperties(
-                ontology.getNumericProperties(),
-                difference(ontology.getEntityProperties(), predicateCategories));
+    private List<Category> prepareCategories(CoverageIndex index, Set<ObjectProperty> predicateCategories) {
+        List<Category> categories = new ArrayList<>();
         for (ObjectProperty predicate : predicateCategories) {
             for (Entity instance : predicate.getRangeValues()) {
-                callables.add(() -> sequentialCovering(trainingSet, new Category(instance, predicate.getID()), premiseProperties));
+                categories.add(new Category(instance, predicate.getID()));
             }
         }
-        return callables;
+        // the largest categories take the longest, start them first to shorten the whole run
+        categories.sort(comparingInt((Category category) -> index.getCategoryCoverage(category).cardinality()).reversed());
+        return categories;
     }
 
-    private Collection<Rule> sequentialCovering(Set<Patient> trainingSet, Category category,
-                                                PremiseProperties premiseProperties) throws PartialStarCreationException {
-        Collection<Rule> rules = new HashSet<>();
-        Set<Patient> uncoveredSet = new HashSet<>(trainingSet);
-        int ruleIdx = 1;
-        while (assertPatientWithCategoryInSet(uncoveredSet, category)) {
-            LOG.info("Remained {} uncovered patients for category {}", uncoveredSet.size(), category);
-            Complex complex = findComplex(trainingSet, uncoveredSet, category, premiseProperties);
-            removeCoveredExamples(uncoveredSet, complex);
-            Rule rule = complex.generateRule(generateRuleName(category, ruleIdx++), category, ontology);
-            rules.add(rule);
+    /**
+     * Previous rules which cover no patients of other categories they didn't cover when they were learned are kept
+     * and their patients are treated as covered. The other ones are specialized, each from its complex, to cover no new
+     * patients of other categories. Remaining patients of the category are covered by new complexes as usual.
+     */
+    private List<LearnedRule> sequentialCovering(CoverageIndex index, Category category, PremiseProperties premiseProperties,
+                                                 List<LearnedRule> previousRules, long runDeadline)
+            throws PartialStarCreationException {
+        long deadline = Math.min(runDeadline, deadline(currentTimeMillis(), config.getCategoryTimeBudget()));
+        List<LearnedRule> rules = new ArrayList<>();
+        BitSet uncoveredSet = index.allPatients();
+        BitSet categorySet = index.getCategoryCoverage(category);
+        PatientDistances distances = new PatientDistances(index.getTrainingSet(), premiseProperties, categorySet);
+        Deque<Complex> startComplexes = new ArrayDeque<>();
+        for (LearnedRule previousRule : previousRules) {
+            if (rules.size() >= config.getMaxRulesPerCategory())
+                break;
+            if (coversNewNegatives(index, previousRule, categorySet))
+                startComplexes.add(previousRule.complex);
+            else
+                coverWith(index, category, previousRule.complex, uncoveredSet, categorySet, distances, rules);
+        }
+        if (!previousRules.isEmpty())
+            LOG.debug("Kept {} of {} rules for category {}", rules.size(), previousRules.size(), category);
+        while (uncoveredSet.intersects(categorySet) && rules.size() < config.getMaxRulesPerCategory()) {
+            LOG.info("Remained {} uncovered patients for category {}", uncoveredSet.cardinality(), category);
+            Complex complex = findComplex(index, uncoveredSet, category, distances, premiseProperties,
+                    startComplexes.poll(), deadline);
+            if (complex == null) {
+                LOG.info("Time budget exceeded for category {}, stopping with {} rules", category, rules.size());
+                break;
+            }
+            coverWith(index, category, complex, uncoveredSet, categorySet, distances, rules);
         }
         return rules;
     }
 
-    private Complex findComplex(Set<Patient> trainingSet, Set<Patient> uncoveredSet, Category category,
-                                PremiseProperties premiseProperties) throws PartialStarCreationException {
+    /**
+     * Removes patients covered by the complex from the uncovered set and adds its rule if it covers enough of them.
+     */
+    private void coverWith(CoverageIndex index, Category category, Complex complex, BitSet uncoveredSet,
+                           BitSet categorySet, PatientDistances distances, List<LearnedRule> rules) {
+        BitSet newlyCovered = removeCoveredExamples(index, uncoveredSet, complex);
+        BitSet uncoveredCategorySet = (BitSet) uncoveredSet.clone();
+        uncoveredCategorySet.and(categorySet);
+        distances.addCovered(newlyCovered, uncoveredCategorySet);
+        newlyCovered.and(categorySet);
+        if (newlyCovered.cardinality() >= config.getMinCoverage()) {
+            Rule rule = complex.generateRule(generateRuleName(category, rules.size() + 1), category, ontology);
+            rules.add(new LearnedRule(complex, negativeIds(index, complex, categorySet), rule));
+        }
+    }
+
+    /**
+     * Negatives are identified by patient IDs, as rows of the same patient differ between runs.
+     */
+    private static Set<String> negativeIds(CoverageIndex index, Complex complex, BitSet categorySet) {
+        BitSet negatives = complex.getCoverage(index);
+        negatives.andNot(categorySet);
+        Set<String> ids = new HashSet<>();
+        for (int row = negatives.nextSetBit(0); row >= 0; row = negatives.nextSetBit(row + 1))
+            ids.add(index.getTrainingSet().getPatient(row).getID());
+        return ids;
+    }
+
+    private static boolean coversNewNegatives(CoverageIndex index, LearnedRule learnedRule, BitSet categorySet) {
+        BitSet negatives = learnedRule.complex.getCoverage(index);
+        negatives.andNot(categorySet);
+        for (int row = negatives.nextSetBit(0); row >= 0; row = negatives.nextSetBit(row + 1)) {
+            if (!learnedRule.negativeIds.contains(index.getTrainingSet().getPatient(row).getID()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns null if the deadline passes before the complex is found. A start complex, if given and covering some
+     * uncovered patient of the category, is specialized instead of starting from the most general complex.
+     */
+    Complex findComplex(CoverageIndex index, BitSet uncoveredSet, Category category, PatientDistances distances,
+                        PremiseProperties premiseProperties, Complex startComplex, long deadline)
+            throws PartialStarCreationException {
         LOG.debug("findComplex");
+        TrainingSet trainingSet = index.getTrainingSet();
+        ComplexComparator comparator = new ComplexComparator(category, index, config.getCoveredWeight(),
+                config.getUncoveredWeight());
         Star star = new Star();
-        Patient positiveSeed = positiveSeed(trainingSet, uncoveredSet, category, premiseProperties);
-        Patient negativeSeed = negativeSeed(trainingSet, star, positiveSeed, category, premiseProperties);
+        BitSet candidateRows = (BitSet) uncoveredSet.clone();
+        candidateRows.and(index.getCategoryCoverage(category));
+        if (startComplex != null) {
+            BitSet startRows = startComplex.getCoverage(index);
+            startRows.and(candidateRows);
+            if (!startRows.isEmpty()) {
+                star.set(0, startComplex);
+                candidateRows = startRows;
+            }
+        }
+        int positiveSeed = positiveSeed(candidateRows, distances);
+        int negativeSeed = negativeSeed(index, star, positiveSeed, category, distances);
 //        LOG.info("Find complex for patients {} and {}", positiveSeed, negativeSeed);
-        while (positiveSeed != null && negativeSeed != null) {
-            Collection<Complex> partialStar = partialStar(positiveSeed, negativeSeed, premiseProperties);
+        while (positiveSeed >= 0 && negativeSeed >= 0) {
+            if (currentTimeMillis() >= deadline)
+                return null;
+            Collection<Complex> partialStar = partialStar(trainingSet, positiveSeed, negativeSeed, premiseProperties);
             if (partialStar.isEmpty()) {
                 LOG.debug("Partial star is empty");
-                throw new PartialStarCreationException(positiveSeed, negativeSeed);
+                throw new PartialStarCreationException(trainingSet.getPatient(positiveSeed), trainingSet.getPatient(negativeSeed));
             }
-            star.intersection(partialStar);
-            star.deleteNarrowComplexes();
-            sortStar(star, category, trainingSet);
-            star.leaveFirstElements(5);
-            negativeSeed = negativeSeed(trainingSet, star, positiveSeed, category, premiseProperties);
+            if (!star.intersection(partialStar, comparator, config.getBeamWidth(), config.getMaxSelectorsPerComplex())) {
+                LOG.debug("Complex reached {} selectors", config.getMaxSelectorsPerComplex());
+                break;
+            }
+            negativeSeed = negativeSeed(index, star, positiveSeed, category, distances);
 //            LOG.info("Negative seed: {}", negativeSeed);
         }
         return star.get(0);
     }
 
-    private Patient positiveSeed(Set<Patient> trainingSet, Set<Patient> uncoveredSet, Category category,
-                                 PremiseProperties premiseProperties) {
+    private int positiveSeed(BitSet candidateRows, PatientDistances distances) {
         LOG.debug("positiveSeed");
-        if (uncoveredSet.isEmpty())
-            return null;
-        Set<Patient> coveredSet = difference(trainingSet, uncoveredSet);
-        Set<Patient> categoryCoveredSet = new HashSet<>();
-        for (Patient uncovered : uncoveredSet) {
-            if (category.assertPatientInCategory(uncovered)) {
-                calculateDistance(uncovered, coveredSet, premiseProperties);
-                categoryCoveredSet.add(uncovered);
-            }
-        }
-        return Collections.max(categoryCoveredSet);
+        return selectSeed(candidateRows, distances::distanceToCovered, true);
     }
 
-    private Patient negativeSeed(Collection<Patient> trainingSet, Star star, Patient positiveSeed, Category category,
-                                 PremiseProperties premiseProperties) {
+    private int negativeSeed(CoverageIndex index, Star star, int positiveSeed, Category category,
+                             PatientDistances distances) {
         LOG.debug("negativeSeed");
-        List<Patient> negativeSeeds = new ArrayList<>();
-        for (Patient patient : trainingSet) {
-            if (star.isPatientCovered(patient) && !category.assertPatientInCategory(patient)) {
-                negativeSeeds.add(patient);
-            }
-        }
-        if (negativeSeeds.isEmpty())
-            return null;
-        Set<Patient> positiveSeedSingleton = Collections.singleton(positiveSeed);
-        for (Patient negativeSeed : negativeSeeds)
-            calculateDistance(negativeSeed, positiveSeedSingleton, premiseProperties);
-        return Collections.min(negativeSeeds);
-    }
-
-    private void calculateDistance(Patient patient, Collection<Patient> otherPatients, PremiseProperties premiseProperties) {
-        LOG.debug("calculateDistance");
-        if (otherPatients.isEmpty()) {
-            LOG.debug("No other patients. Set patient distance to 0");
-            patient.setEvaluation(0);
-            return;
-        }
-
-        OptionalDouble objectPropertiesEvaluation = premiseProperties.objectProperties
-                .stream()
-                .mapToDouble(property -> entityPropertyDifferenceEvaluation(patient, otherPatients, property))
-                .filter(Objects::nonNull)
-                .average();
-        OptionalDouble integerPropertiesEvaluation = premiseProperties.integerProperties
-                .stream()
-                .map(property -> numericPropertyDifferenceEvaluation(patient, otherPatients, property))
-                .filter(Objects::nonNull)
-                .mapToDouble(Float::doubleValue)
-                .average();
-
-        patient.setEvaluation((float) Arrays.stream(new OptionalDouble[]{objectPropertiesEvaluation, integerPropertiesEvaluation})
-                .filter(OptionalDouble::isPresent)
-                .mapToDouble(OptionalDouble::getAsDouble)
-                .average()
-                .orElseThrow(RuntimeException::new));
-    }
-
-    private Float entityPropertyDifferenceEvaluation(Patient patient, Collection<Patient> otherPatients, ObjectProperty property) {
-        Set<Entity> patientProperties = patient.getEntityProperties(property.getID());
-        double difference = otherPatients
-                .stream()
-                .map(otherPatient -> otherPatient.getEntityProperties(property.getID()))
-                .mapToInt(otherPatientProps -> symmetricDifference(otherPatientProps, patientProperties).size())
-                .average()
-                .orElseThrow(RuntimeException::new);
-
-        return (float) difference / property.getRangeValues().size();
+        BitSet candidateRows = star.getCoverage(index);
+        candidateRows.andNot(index.getCategoryCoverage(category));
+        return selectSeed(candidateRows, row -> distances.distance(row, positiveSeed), false);
     }
 
-    private Float numericPropertyDifferenceEvaluation(Patient patient, Collection<Patient> otherPatients, NumericProperty property) {
-        Float patientProperty = patient.getNumericProperty(property.getID());
-        if (patientProperty == null)
-            return null;
-        double difference = 0;
-        try {
-            difference = otherPatients
-                    .stream()
-                    .map(otherPatient -> otherPatient.getNumericProperty(property.getID()))
-                    .filter(Objects::nonNull)
-                    .mapToDouble(otherPatientProp -> abs(patientProperty - otherPatientProp))
-                    .average()
-                    .orElseThrow(RuntimeException::new);
-        } catch (RuntimeException e) {
-            return null;
+    /**
+     * Distances are calculated in parallel (in the pool running the category when it is a ForkJoinPool),
+     * ties are resolved sequentially in favour of the lowest row, so the result doesn't depend on scheduling.
+     */
+    private int selectSeed(BitSet candidateRows, IntToDoubleFunction distance, boolean farthest) {
+        int[] rows = candidateRows.stream().toArray();
+        double[] distances = new double[rows.length];
+        IntStream.range(0, rows.length).parallel().forEach(i -> distances[i] = distance.applyAsDouble(rows[i]));
+        int seed = -1;
+        for (int i = 0; i < rows.length; i++) {
+            if (seed < 0 || (farthest ? distances[i] > distances[seed] : distances[i] < distances[seed]))
+                seed = i;
         }
-
-        return (float) difference / (property.getMaxValue() - property.getMinValue());
+        return seed < 0 ? -1 : rows[seed];
     }
 
-    private Collection<Complex> partialStar(Patient positivePatient, Patient negativePatient, PremiseProperties premiseProperties) {
+    private Collection<Complex> partialStar(TrainingSet trainingSet, int positiveRow, int negativeRow,
+                                            PremiseProperties premiseProperties) {
         Collection<Complex> resultComplexes = premiseProperties.objectProperties
                 .stream()
-                .map(p -> createComplexes(p, positivePatient, negativePatient))
+                .map(p -> createComplexes(trainingSet, trainingSet.getEntityColumn(p.getID()), positiveRow, negativeRow))
                 .flatMap(Collection::stream)
                 .collect(toList());
 
         resultComplexes.addAll(premiseProperties.integerProperties
                 .stream()
-                .map(p -> createAtomComplex(p, positivePatient, negativePatient))
+                .map(p -> createAtomComplex(p, trainingSet.getNumericColumn(p.getID()), positiveRow, negativeRow))
                 .filter(Objects::nonNull)
                 .collect(toList()));
 
         return resultComplexes;
     }
 
-    private void removeCoveredExamples(Collection<Patient> trainingSet, Complex complex) {
+    private BitSet removeCoveredExamples(CoverageIndex index, BitSet uncoveredSet, Complex complex) {
         LOG.debug("removeCoveredExamples");
-        trainingSet.removeIf(complex::isPatientCovered);
+        BitSet newlyCovered = complex.getCoverage(index);
+        newlyCovered.and(uncoveredSet);
+        uncoveredSet.andNot(newlyCovered);
+        return newlyCovered;
     }
 
-    private Collection<Complex> createComplexes(ObjectProperty property, Patient positivePatient, Patient negativePatient) {
-        Set<Entity> positiveProperties = positivePatient.getEntityProperties(property.getID());
-        Set<Entity> negativeProperties = negativePatient.getEntityProperties(property.getID());
-        return positiveProperties
-                .stream()
-                .filter(p -> !negativeProperties.contains(p))
-                .map(p -> createAtomComplex(property, p))
-                .collect(toList());
+    private Collection<Complex> createComplexes(TrainingSet trainingSet, EntityColumn column, int positiveRow, int negativeRow) {
+        Collection<Complex> complexes = new ArrayList<>();
+        for (int position = column.getStart(positiveRow); position < column.getEnd(positiveRow); position++) {
+            int entityId = column.getValue(position);
+            if (!column.contains(negativeRow, entityId))
+                complexes.add(createAtomComplex(column.getProperty(), trainingSet.getEntity(entityId)));
+        }
+        return complexes;
     }
 
     private Complex createAtomComplex(ObjectProperty property, Entity entity) {
@@ -230,10 +321,8 @@ public class MachineLearning {
         return complex;
     }
 
-    private Complex createAtomComplex(NumericProperty property, Patient positivePatient, Patient negativePatient) {
-        Float posVal = positivePatient.getNumericProperty(property.getID());
-        Float negVal = negativePatient.getNumericProperty(property.getID());
-        LinearSelector<Float> selector = createLinearSelector(posVal, negVal);
+    private Complex createAtomComplex(NumericProperty property, float[] column, int positiveRow, int negativeRow) {
+        LinearSelector<Float> selector = createLinearSelector(column[positiveRow], column[negativeRow]);
         if (selector != null) {
             Complex complex = new Complex();
             complex.setNumericSelector(property, selector);
@@ -242,9 +331,9 @@ public class MachineLearning {
         return null;
     }
 
-    private LinearSelector createLinearSelector(Float posValue, Float negValue) {
-        if (posValue != null && negValue != null && !posValue.equals(negValue)) {
-            float midValue = posValue + (negValue - posValue) * epsilon;
+    private LinearSelector createLinearSelector(float posValue, float negValue) {
+        if (!Float.isNaN(posValue) && !Float.isNaN(negValue) && Float.compare(posValue, negValue) != 0) {
+            float midValue = posValue + (negValue - posValue) * config.getEpsilon();
             if (negValue < posValue) {
                 if (midValue == negValue)
                     return LinearSelector.greaterThanSelector(midValue);
@@ -260,26 +349,62 @@ public class MachineLearning {
         return null;
     }
 
-    private boolean assertPatientWithCategoryInSet(Set<Patient> patientsSet, Category category) {
-        return patientsSet.stream().anyMatch(category::assertPatientInCategory);
+    private static long deadline(long start, long budget) {
+        return budget > 0 && budget < NO_DEADLINE - start ? start + budget : NO_DEADLINE;
     }
 
     private String generateRuleName(Category category, int ruleIdx) {
         return format("%s_%s_%s_%d", GENERATED_RULE_PREFIX, category.getPredicate(), category.getEntity(), ruleIdx);
     }
 
+    /**
+     * Merges head atoms of rules with equal bodies in one pass over rules grouped by body atoms.
+     * The rule with the lowest name represents its group.
+     */
     private Collection<Rule> simplifyRules(Collection<Rule> rules) {
-        List<Rule> rulesList = new ArrayList<>(rules);
-        for (int i = 0; i < rulesList.size() - 1; i++) {
-            Rule rule = rulesList.get(i);
-            for (int j = i + 1; j < rulesList.size(); j++) {
-                Rule referenceRule = rulesList.get(j);
-                if (rule.getBodyAtoms().equals(referenceRule.getBodyAtoms())) {
+        Map<Set<AbstractAtom>, List<Rule>> groups = new LinkedHashMap<>();
+        for (Rule rule : rules)
+            groups.computeIfAbsent(new HashSet<>(rule.getBodyAtoms()), body -> new ArrayList<>(1)).add(rule);
+
+        List<Rule> rulesList = new ArrayList<>(groups.size());
+        for (List<Rule> group : groups.values()) {
+            Rule rule = Collections.min(group, comparing(Rule::getName, nullsFirst(naturalOrder())));
+            for (Rule referenceRule : group) {
+                if (referenceRule != rule)
                     rule.addHeadAtoms(referenceRule.getHeadAtoms());
-                    rulesList.remove(referenceRule);
-                }
             }
+            rulesList.add(rule);
         }
         return rulesList;
     }
+
+    private static class SharedPool {
+        private static final ForkJoinPool INSTANCE = new ForkJoinPool(new LearningConfig().getParallelism());
+    }
+
+    /**
+     * Rules learned by a run for each category, with the complexes they were generated from.
+     */
+    private static class Model {
+
+        private final Set<ObjectProperty> predicateCategories;
+        private final Map<Category, List<LearnedRule>> rules = new HashMap<>();
+
+        private Model(Set<ObjectProperty> predicateCategories) {
+            this.predicateCategories = new HashSet<>(predicateCategories);
+        }
+    }
+
+    private static class LearnedRule {
+
+        private final Complex complex;
+        private final Set<String> negativeIds;
+        private final Rule rule;
+
+        private LearnedRule(Complex complex, Set<String> negativeIds, Rule rule) {
+            this.complex = complex;
+            this.negativeIds = negativeIds;
+            this.rule = rule;
+        }
+    }
 }
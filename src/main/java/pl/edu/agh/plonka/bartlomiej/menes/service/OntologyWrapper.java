@@ -1,22 +1,21 @@
 package pl.edu.agh.plonka.bartlomiej.menes.service;
 
 import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Range;
 import org.apache.commons.lang3.StringUtils;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.dlsyntax.renderer.DLSyntaxObjectRenderer;
 import org.semanticweb.owlapi.io.OWLObjectRenderer;
 import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.InferenceType;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
-import org.semanticweb.owlapi.search.EntitySearcher;
 import org.semanticweb.owlapi.util.OWLEntityRemover;
+import org.semanticweb.owlapi.util.ShortFormProvider;
+import org.semanticweb.owlapi.util.SimpleShortFormProvider;
 import org.slf4j.Logger;
-import org.swrlapi.core.SWRLAPIOWLOntology;
-import org.swrlapi.core.SWRLRuleEngine;
-import org.swrlapi.core.SWRLRuleRenderer;
-import org.swrlapi.factory.SWRLAPIFactory;
 import pl.edu.agh.plonka.bartlomiej.menes.exception.CreateRuleException;
 import pl.edu.agh.plonka.bartlomiej.menes.model.Properties;
 import pl.edu.agh.plonka.bartlomiej.menes.model.*;
@@ -30,19 +29,24 @@ import uk.ac.manchester.cs.owl.owlapi.OWLLiteralImplPlain;
 import java.io.File;
 import java.io.InputStream;
 import java.util.*;
+import java.util.function.BiConsumer;
 
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
 import static java.util.Collections.*;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
-import static org.semanticweb.owlapi.search.EntitySearcher.getDataPropertyValues;
-import static org.semanticweb.owlapi.search.EntitySearcher.getObjectPropertyValues;
+import static org.semanticweb.owlapi.reasoner.InferenceType.DATA_PROPERTY_ASSERTIONS;
+import static org.semanticweb.owlapi.reasoner.InferenceType.OBJECT_PROPERTY_ASSERTIONS;
 import static org.slf4j.LoggerFactory.getLogger;
-import static pl.edu.agh.plonka.bartlomiej.menes.utils.Others.findEntity;
 
 public class OntologyWrapper {
 
     private static final Logger LOG = getLogger(OntologyWrapper.class);
+    public static final int DEFAULT_IMPORT_CHUNK_SIZE = 10_000;
 
     private final OWLObjectRenderer renderer = new DLSyntaxObjectRenderer();
+    private final ShortFormProvider shortFormProvider = new SimpleShortFormProvider();
     private final EntitiesLoader entitiesLoader;
     private final RulesManager rulesManager;
     private final OWLOntology ontology;
@@ -50,13 +54,9 @@ public class OntologyWrapper {
     private final PrefixManager prefixManager;
     private final OWLDocumentFormat ontologyFormat;
     private final OWLOntologyManager ontologyManager;
-    private final OWLReasoner reasoner;
-    private final SWRLRuleEngine ruleEngine;
-    private final SWRLAPIOWLOntology ruleOntology;
-    private final SWRLRuleRenderer ruleRenderer;
-    private Set<OntologyClass> classes = new HashSet<>();
+    private volatile OWLReasoner reasoner;
+    private final EntityRegistry registry = new EntityRegistry();
     private final OWLEntityRemover remover;
-    private Set<Entity> entities = new HashSet<>();
     private Collection<Rule> rules = new ArrayList<>();
     private final OntologyProperties properties;
     private Set<Property> stringProperties;
@@ -72,18 +72,21 @@ public class OntologyWrapper {
         ontologyFormat = ontologyManager.getOntologyFormat(ontology);
         prefixManager = ontologyFormat.asPrefixOWLOntologyFormat();
         prefixManager.setDefaultPrefix(baseURL + "#");
-        OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
-        reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
         remover = new OWLEntityRemover(Collections.singleton(ontology));
-        ruleEngine = SWRLAPIFactory.createSWRLRuleEngine(ontology);
-        ruleOntology = ruleEngine.getSWRLAPIOWLOntology();
-        ruleRenderer = ruleOntology.createSWRLRuleRenderer();
         properties = new OntologyProperties(factory, prefixManager);
-        entitiesLoader = new EntitiesLoader(ontology, renderer, factory, reasoner, properties);
-        rulesManager = new RulesManager(ruleOntology);
+        entitiesLoader = new EntitiesLoader(ontology, renderer, factory, this::getReasoner, properties, registry, false);
+        rulesManager = new RulesManager(ontology, prefixManager, registry);
     }
 
     public OntologyWrapper(InputStream inputStream) throws OWLOntologyCreationException {
+        this(inputStream, false);
+    }
+
+    /**
+     * @param useReasoner whether types of instances and domains of properties are inferred by the reasoner while
+     *                    loading, which is slow, instead of taken from the asserted axioms
+     */
+    public OntologyWrapper(InputStream inputStream, boolean useReasoner) throws OWLOntologyCreationException {
         ontologyManager = OWLManager.createOWLOntologyManager();
         factory = ontologyManager.getOWLDataFactory();
         ontology = ontologyManager.loadOntologyFromOntologyDocument(inputStream);
@@ -91,19 +94,22 @@ public class OntologyWrapper {
         prefixManager = ontologyFormat.asPrefixOWLOntologyFormat();
         String baseURL = ontology.getOntologyID().getOntologyIRI().get().toString();
         prefixManager.setDefaultPrefix(baseURL + "#");
-        OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
-        reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
         remover = new OWLEntityRemover(Collections.singleton(ontology));
-        ruleEngine = SWRLAPIFactory.createSWRLRuleEngine(ontology);
-        ruleOntology = ruleEngine.getSWRLAPIOWLOntology();
-        ruleRenderer = ruleOntology.createSWRLRuleRenderer();
         properties = new OntologyProperties(factory, prefixManager);
-        entitiesLoader = new EntitiesLoader(ontology, renderer, factory, reasoner, properties);
-        rulesManager = new RulesManager(ruleOntology);
+        entitiesLoader = new EntitiesLoader(ontology, renderer, factory, this::getReasoner, properties, registry, useReasoner);
+        rulesManager = new RulesManager(ontology, prefixManager, registry);
         loadData();
     }
 
     public OntologyWrapper(File file) throws OWLOntologyCreationException {
+        this(file, false);
+    }
+
+    /**
+     * @param useReasoner whether types of instances and domains of properties are inferred by the reasoner while
+     *                    loading, which is slow, instead of taken from the asserted axioms
+     */
+    public OntologyWrapper(File file, boolean useReasoner) throws OWLOntologyCreationException {
         ontologyManager = OWLManager.createOWLOntologyManager();
         factory = ontologyManager.getOWLDataFactory();
         ontology = ontologyManager.loadOntologyFromOntologyDocument(file);
@@ -111,29 +117,62 @@ public class OntologyWrapper {
         prefixManager = ontologyFormat.asPrefixOWLOntologyFormat();
         String baseURL = ontology.getOntologyID().getOntologyIRI().get().toString();
         prefixManager.setDefaultPrefix(baseURL + "#");
-        OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
-        reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
         remover = new OWLEntityRemover(Collections.singleton(ontology));
-        ruleEngine = SWRLAPIFactory.createSWRLRuleEngine(ontology);
-        ruleOntology = ruleEngine.getSWRLAPIOWLOntology();
-        ruleRenderer = ruleOntology.createSWRLRuleRenderer();
         properties = new OntologyProperties(factory, prefixManager);
-        entitiesLoader = new EntitiesLoader(ontology, renderer, factory, reasoner, properties);
-        rulesManager = new RulesManager(ruleOntology);
+        entitiesLoader = new EntitiesLoader(ontology, renderer, factory, this::getReasoner, properties, registry, useReasoner);
+        rulesManager = new RulesManager(ontology, prefixManager, registry);
         loadData();
     }
 
+    /**
+     * The reasoner is created on first use, as it loads the whole ontology.
+     */
+    private OWLReasoner getReasoner() {
+        if (reasoner == null) {
+            synchronized (this) {
+                if (reasoner == null) {
+                    OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
+                    reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
+                }
+            }
+        }
+        return reasoner;
+    }
+
+    /**
+     * Creates the reasoner and precomputes the given inferences, all the precomputable ones if
+     * none are given. Lets a service warm up before it is used.
+     */
+    public void precompute(InferenceType... inferenceTypes) {
+        OWLReasoner reasoner = getReasoner();
+        if (inferenceTypes.length == 0)
+            reasoner.precomputeInferences(reasoner.getPrecomputableInferenceTypes().toArray(new InferenceType[0]));
+        else
+            precomputeInferences(reasoner, inferenceTypes);
+    }
+
+    /**
+     * Inference types not supported by the reasoner are skipped.
+     */
+    private void precomputeInferences(OWLReasoner reasoner, InferenceType... inferenceTypes) {
+        Set<InferenceType> precomputableTypes = reasoner.getPrecomputableInferenceTypes();
+        reasoner.precomputeInferences(Arrays.stream(inferenceTypes)
+                .filter(precomputableTypes::contains)
+                .toArray(InferenceType[]::new));
+    }
+
     private void loadData() {
-        classes = entitiesLoader.loadClasses();
-        entities = entitiesLoader.loadInstances(classes);
-        Properties properties = entitiesLoader.loadProperties(classes);
+        AssertionsIndex assertions = new AssertionsIndex(ontology);
+        entitiesLoader.loadClasses();
+        entitiesLoader.loadInstances(assertions);
+        Properties properties = entitiesLoader.loadProperties();
         numericProperties = properties.numericProperties;
         booleanProperties = properties.booleanProperties;
         stringProperties = properties.stringProperties;
         entityProperties = properties.entityProperties;
-        patients = getPatients();
+        patients = getPatients(assertions);
         fillIntegerPropertiesRanges();
-        rules = rulesManager.loadRules(classes, entities);
+        rules = rulesManager.loadRules();
     }
 
     private void fillIntegerPropertiesRanges() {
@@ -152,94 +191,227 @@ public class OntologyWrapper {
     }
 
     public Set<OntologyClass> getClasses() {
-        return classes;
+        return new HashSet<>(registry.getClasses());
     }
 
     public Set<Entity> getClassInstances(String className) {
-        OntologyClass cls = findEntity(className, classes);
+        OntologyClass cls = registry.findClass(className);
         if (cls == null)
             return emptySet();
         return cls.getInstances();
     }
 
-    private Patient getPatient(OWLIndividual patientInd) {
-        Patient patient = new Patient(renderer.render(patientInd));
+    private Patient getPatient(OWLIndividual patientInd, AssertionsIndex assertions) {
+        Patient patient = new Patient(getID(patientInd));
 
         stringProperties.stream().map(Entity::getID).forEach(propertyName ->
-                patient.setStringProperties(propertyName, getPatientStringProperties(patientInd, propertyName))
+                patient.setStringProperties(propertyName, getPatientStringProperties(patientInd, propertyName, assertions))
         );
         numericProperties.stream().map(Entity::getID).forEach(propertyName ->
-                patient.setNumericProperties(propertyName, getPatientNumericProperties(patientInd, propertyName))
+                patient.setNumericProperties(propertyName, getPatientNumericProperties(patientInd, propertyName, assertions))
         );
         entityProperties.stream().map(Entity::getID).forEach(propertyName ->
-                patient.setEntityProperties(propertyName, getPatientObjectProperties(patientInd, propertyName))
+                patient.setEntityProperties(propertyName, getPatientObjectProperties(patientInd, propertyName, assertions))
         );
         booleanProperties.stream().map(Entity::getID).forEach(propertyName ->
-                patient.setBooleanProperties(propertyName, getPatientBooleanProperties(patientInd, propertyName))
+                patient.setBooleanProperties(propertyName, getPatientBooleanProperties(patientInd, propertyName, assertions))
         );
 
         return patient;
     }
 
-    private Collection<Boolean> getPatientBooleanProperties(OWLIndividual patientInd, String propertyName) {
+    /**
+     * Same as rendered by the renderer, which can't be used from many threads.
+     */
+    private String getID(OWLIndividual individual) {
+        return individual.isNamed() ? shortFormProvider.getShortForm(individual.asOWLNamedIndividual()) : "";
+    }
+
+    private Collection<Boolean> getPatientBooleanProperties(OWLIndividual patientInd, String propertyName,
+                                                            AssertionsIndex assertions) {
         OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
-        return getDataPropertyValues(patientInd, property, ontology)
+        return assertions.getDataPropertyValues(patientInd, property)
                 .stream()
-                .map(renderer::render)
+                .map(OWLLiteral::getLiteral)
                 .map(Boolean::parseBoolean)
                 .collect(toSet());
-
     }
 
     public void addPatient(Patient patient) {
-        generatePatientID(patient);
+        generatePatientID(patient, new HashSet<>(), new HashMap<>());
+        ontologyManager.addAxioms(ontology, createPatientAxioms(patient));
+
+//        getInferredPatient(patient);
+    }
+
+    public ImportSummary addPatients(Collection<Patient> patients) {
+        return addPatients(patients, DEFAULT_IMPORT_CHUNK_SIZE, true);
+    }
+
+    /**
+     * Adds patients in bulk. Axioms are built per chunk of patients, in parallel if requested, and each chunk is
+     * applied as one change batch. The reasoner is flushed once at the end.
+     */
+    public ImportSummary addPatients(Collection<Patient> patients, int chunkSize, boolean parallel) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException(format("INVALID_CHUNK_SIZE %d", chunkSize));
+        long start = System.nanoTime();
+        generatePatientIDs(patients);
+
+        List<List<Patient>> chunks = Lists.partition(new ArrayList<>(patients), chunkSize);
+        List<List<OWLOntologyChange>> chunksChanges = (parallel ? chunks.parallelStream() : chunks.stream())
+                .map(this::createPatientsChanges)
+                .collect(toList());
+        int axiomsCount = 0;
+        for (List<OWLOntologyChange> changes : chunksChanges) {
+            ontologyManager.applyChanges(changes);
+            axiomsCount += changes.size();
+        }
+        if (reasoner != null)
+            reasoner.flush();
+
+        ImportSummary summary = new ImportSummary(patients.size(), axiomsCount, System.nanoTime() - start);
+        LOG.info("Imported {}", summary);
+        return summary;
+    }
+
+    private List<OWLOntologyChange> createPatientsChanges(Collection<Patient> patients) {
+        List<OWLOntologyChange> changes = new ArrayList<>();
+        for (Patient patient : patients) {
+            for (OWLAxiom axiom : createPatientAxioms(patient))
+                changes.add(new AddAxiom(ontology, axiom));
+        }
+        return changes;
+    }
+
+    private Set<OWLAxiom> createPatientAxioms(Patient patient) {
+        Set<OWLAxiom> axioms = new HashSet<>();
         OWLNamedIndividual patientInd = factory.getOWLNamedIndividual(patient.getID(), prefixManager);
 
-        setIndClass(properties.patientClass, patientInd);
+        axioms.add(factory.getOWLClassAssertionAxiom(properties.patientClass, patientInd));
 
         stringProperties.stream().map(Entity::getID).forEach(propertyName ->
-                setPatientIndStringProperty(patientInd, propertyName, patient.getStringProperties(propertyName))
+                setPatientIndStringProperty(axioms, patientInd, propertyName, patient.getStringProperties(propertyName))
         );
         numericProperties.stream().map(Entity::getID).forEach(propertyName ->
-                setPatientIndNumericProperty(patientInd, propertyName, patient.getNumericProperties(propertyName))
+                setPatientIndNumericProperty(axioms, patientInd, propertyName, patient.getNumericProperties(propertyName))
         );
         entityProperties.stream().map(Entity::getID).forEach(propertyName ->
-                setPatientIndObjectProperty(patientInd, propertyName, patient.getEntityProperties(propertyName))
+                setPatientIndObjectProperty(axioms, patientInd, propertyName, patient.getEntityProperties(propertyName))
         );
         booleanProperties.stream().map(Entity::getID).forEach(propertyName ->
-                setPatientIndBooleanProperty(patientInd, propertyName, patient.getBooleanProperties(propertyName))
+                setPatientIndBooleanProperty(axioms, patientInd, propertyName, patient.getBooleanProperties(propertyName))
         );
-
-//        getInferredPatient(patient);
+        return axioms;
     }
 
-    private void setPatientIndBooleanProperty(OWLIndividual patientInd, String propertyName, Collection<Boolean> values) {
+    private void setPatientIndBooleanProperty(Set<OWLAxiom> axioms, OWLIndividual patientInd, String propertyName,
+                                              Collection<Boolean> values) {
         OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
         values
                 .stream()
                 .filter(Objects::nonNull)
-                .forEach(v -> ontologyManager.addAxiom(
-                        ontology,
-                        factory.getOWLDataPropertyAssertionAxiom(property, patientInd, v)));
+                .forEach(v -> axioms.add(factory.getOWLDataPropertyAssertionAxiom(property, patientInd, v)));
     }
 
     public Patient updatePatient(Patient patient) {
-        deleteEntity(patient);
-        addPatient(patient);
+        List<OWLOntologyChange> changes = patientChanges(patient);
+        if (!changes.isEmpty())
+            ontologyManager.applyChanges(changes);
 //        return getInferredPatient(patient);
         return patient;
     }
 
-    public Set<Patient> getPatients() {
-        Set<Patient> patients = new HashSet<>();
-        Patient patient;
-        for (OWLIndividual patientInd : EntitySearcher.getIndividuals(properties.patientClass, ontology)) {
-            patient = getPatient(patientInd);
-//            patient = getInferredPatient(patient);
-            patients.add(patient);
+    /**
+     * Updates asserted values of all given patients in a single change batch.
+     */
+    public void updatePatients(Collection<Patient> patients) {
+        List<OWLOntologyChange> changes = new ArrayList<>();
+        for (Patient patient : patients)
+            changes.addAll(patientChanges(patient));
+        if (!changes.isEmpty())
+            ontologyManager.applyChanges(changes);
+    }
+
+    /**
+     * Changes turning asserted property values of the patient individual into the values of the patient.
+     * Values are compared after parsing, so e.g. an integer literal equal to a numeric value of the patient is kept.
+     * Axioms of properties not handled by the wrapper are left untouched.
+     */
+    private List<OWLOntologyChange> patientChanges(Patient patient) {
+        OWLNamedIndividual patientInd = factory.getOWLNamedIndividual(patient.getID(), prefixManager);
+        Set<OWLDataProperty> numericDataProperties = dataProperties(numericProperties);
+        Set<OWLDataProperty> dataProperties = dataProperties(stringProperties);
+        dataProperties.addAll(dataProperties(booleanProperties));
+        dataProperties.addAll(numericDataProperties);
+        Set<OWLObjectProperty> objectProperties = entityProperties
+                .stream()
+                .map(property -> factory.getOWLObjectProperty(property.getID(), prefixManager))
+                .collect(toSet());
+
+        List<OWLOntologyChange> changes = new ArrayList<>();
+        Map<List<Object>, OWLAxiom> assertedAxioms = new HashMap<>();
+        BiConsumer<List<Object>, OWLAxiom> putAsserted = (key, axiom) -> {
+            OWLAxiom duplicate = assertedAxioms.put(key, axiom);
+            if (duplicate != null)
+                changes.add(new RemoveAxiom(ontology, duplicate));
+        };
+        for (OWLClassAssertionAxiom axiom : ontology.getClassAssertionAxioms(patientInd)) {
+            if (axiom.getClassExpression().equals(properties.patientClass))
+                putAsserted.accept(singletonList(axiom.getClassExpression()), axiom);
+        }
+        for (OWLDataPropertyAssertionAxiom axiom : ontology.getDataPropertyAssertionAxioms(patientInd)) {
+            if (dataProperties.contains(axiom.getProperty()))
+                putAsserted.accept(assertionKey(axiom, numericDataProperties), axiom);
+        }
+        for (OWLObjectPropertyAssertionAxiom axiom : ontology.getObjectPropertyAssertionAxioms(patientInd)) {
+            if (objectProperties.contains(axiom.getProperty()))
+                putAsserted.accept(asList(axiom.getProperty(), axiom.getObject()), axiom);
         }
-//        patients.addAll(generatePatientsFromRules());
-        return patients;
+
+        for (OWLAxiom axiom : createPatientAxioms(patient)) {
+            List<Object> key;
+            if (axiom instanceof OWLDataPropertyAssertionAxiom)
+                key = assertionKey((OWLDataPropertyAssertionAxiom) axiom, numericDataProperties);
+            else if (axiom instanceof OWLObjectPropertyAssertionAxiom)
+                key = asList(((OWLObjectPropertyAssertionAxiom) axiom).getProperty(), ((OWLObjectPropertyAssertionAxiom) axiom).getObject());
+            else
+                key = singletonList(((OWLClassAssertionAxiom) axiom).getClassExpression());
+            if (assertedAxioms.remove(key) == null)
+                changes.add(new AddAxiom(ontology, axiom));
+        }
+        assertedAxioms.values().forEach(axiom -> changes.add(new RemoveAxiom(ontology, axiom)));
+        return changes;
+    }
+
+    private List<Object> assertionKey(OWLDataPropertyAssertionAxiom axiom, Set<OWLDataProperty> numericDataProperties) {
+        String value = axiom.getObject().getLiteral();
+        if (numericDataProperties.contains(axiom.getProperty())) {
+            try {
+                return asList(axiom.getProperty(), Float.parseFloat(value));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid numeric value {} of {}", value, axiom.getProperty());
+            }
+        }
+        return asList(axiom.getProperty(), value);
+    }
+
+    private Set<OWLDataProperty> dataProperties(Collection<? extends Property> properties) {
+        return properties
+                .stream()
+                .map(property -> factory.getOWLDataProperty(property.getID(), prefixManager))
+                .collect(toSet());
+    }
+
+    public Set<Patient> getPatients() {
+        return getPatients(new AssertionsIndex(ontology));
+    }
+
+    private Set<Patient> getPatients(AssertionsIndex assertions) {
+        return assertions.getInstances(properties.patientClass)
+                .parallelStream()
+                .map(patientInd -> getPatient(patientInd, assertions))
+                .collect(toSet());
     }
 
     public void addEntity(Entity entity) {
@@ -247,6 +419,7 @@ public class OntologyWrapper {
         setEntityIndClasses(entityInd, entity.getClasses());
         setEntityIndProperty(entityInd, factory.getRDFSLabel(), entity.getLanguageLabelMap());
         setEntityIndProperty(entityInd, factory.getRDFSComment(), entity.getLanguageCommentMap());
+        registry.registerEntity(entity);
     }
 
     public void deleteEntity(Entity entity) {
@@ -254,6 +427,7 @@ public class OntologyWrapper {
         entityID.accept(remover);
         ontologyManager.applyChanges(remover.getChanges());
         remover.reset();
+        registry.unregisterEntity(entity.getID());
     }
 
     public void deleteEntities(Collection<Entity> entities) {
@@ -270,6 +444,10 @@ public class OntologyWrapper {
         ontologyManager.saveOntology(ontology, ontologyFormat, IRI.create(file));
     }
 
+    public Entity findEntity(String id) {
+        return registry.findEntity(id);
+    }
+
     public boolean containsID(String id) {
         return ontology.containsEntityInSignature(IRI.create(prefixManager.getDefaultPrefix(), id));
     }
@@ -295,34 +473,99 @@ public class OntologyWrapper {
     }
 
     public void addRules(Collection<Rule> rules) throws CreateRuleException {
-        for (Rule rule : rules) {
-            rulesManager.addRule(rule);
-        }
+        rulesManager.addRules(rules);
+    }
+
+    public void replaceRules(Collection<Rule> rulesToDelete, Collection<Rule> rulesToAdd) throws CreateRuleException {
+        rulesManager.replaceRules(rulesToDelete, rulesToAdd);
     }
 
     public void changeLanguage() {
-        classes.forEach(Entity::setLanguage);
-        entities.forEach(Entity::setLanguage);
+        registry.getClasses().forEach(Entity::setLanguage);
+        registry.getEntities().forEach(Entity::setLanguage);
     }
 
     public Patient getInferredPatient(Patient patient) {
+        OWLReasoner reasoner = getReasoner();
         reasoner.flush();
-        OWLNamedIndividual patientInd = factory.getOWLNamedIndividual(patient.getID(), prefixManager);
+        setInferredValues(queryInferredValues(reasoner, patient));
+        return patient;
+    }
 
+    /**
+     * Fills inferred properties of all the patients. The reasoner is flushed once and property assertions are
+     * precomputed, then all the reasoner queries are done before the answers are set to the patients. Only the
+     * flush and the precomputation are batched, the reasoner is still queried for each patient and property, as the
+     * answers come from the precomputed knowledge base and reading them in bulk doesn't make inference faster.
+     */
+    public InferenceSummary getInferredPatients(Collection<Patient> patients) {
+        long start = System.nanoTime();
+        OWLReasoner reasoner = getReasoner();
+        reasoner.flush();
+        precomputeInferences(reasoner, OBJECT_PROPERTY_ASSERTIONS, DATA_PROPERTY_ASSERTIONS);
+        List<InferredValues> inferredValues = patients
+                .stream()
+                .map(patient -> queryInferredValues(reasoner, patient))
+                .collect(toList());
+        long reasonerEnd = System.nanoTime();
+        inferredValues.forEach(this::setInferredValues);
+
+        InferenceSummary summary = new InferenceSummary(patients.size(), reasonerEnd - start,
+                System.nanoTime() - reasonerEnd);
+        LOG.debug("Inferred {}", summary);
+        return summary;
+    }
+
+    private InferredValues queryInferredValues(OWLReasoner reasoner, Patient patient) {
+        OWLNamedIndividual patientInd = factory.getOWLNamedIndividual(patient.getID(), prefixManager);
+        InferredValues inferredValues = new InferredValues(patient);
         numericProperties.stream().map(Entity::getID).forEach(propertyName ->
-                patient.setInferredNumericProperties(
-                        propertyName,
-                        getPatientInferredNumericProperty(patientInd, propertyName, patient.getNumericProperties(propertyName))));
+                inferredValues.numericValues.put(propertyName, reasoner.getDataPropertyValues(patientInd,
+                        factory.getOWLDataProperty(propertyName, prefixManager))));
         stringProperties.stream().map(Entity::getID).forEach(propertyName ->
-                patient.setInferredStringProperties(
-                        propertyName,
-                        getPatientInferredStringProperty(patientInd, propertyName, patient.getStringProperties(propertyName))));
+                inferredValues.stringValues.put(propertyName, reasoner.getDataPropertyValues(patientInd,
+                        factory.getOWLDataProperty(propertyName, prefixManager))));
         entityProperties.stream().map(Entity::getID).forEach(propertyName ->
-                patient.setInferredEntityProperties(
-                        propertyName,
-                        getPatientInferredObjectProperty(patientInd, propertyName, patient.getEntityProperties(propertyName))));
+                inferredValues.entityValues.put(propertyName, reasoner.getObjectPropertyValues(patientInd,
+                        factory.getOWLObjectProperty(propertyName, prefixManager)).getFlattened()));
+        return inferredValues;
+    }
 
-        return patient;
+    private void setInferredValues(InferredValues inferredValues) {
+        Patient patient = inferredValues.patient;
+        inferredValues.numericValues.forEach((propertyName, values) -> {
+            Set<Float> inferred = values.stream().map(OWLLiteral::getLiteral).map(Float::parseFloat).collect(toSet());
+            inferred.removeAll(patient.getNumericProperties(propertyName));
+            patient.setInferredNumericProperties(propertyName, inferred);
+        });
+        inferredValues.stringValues.forEach((propertyName, values) -> {
+            Set<String> inferred = values.stream().map(OWLLiteral::getLiteral).collect(toSet());
+            inferred.removeAll(patient.getStringProperties(propertyName));
+            patient.setInferredStringProperties(propertyName, inferred);
+        });
+        inferredValues.entityValues.forEach((propertyName, values) -> {
+            Set<Entity> inferred = values
+                    .stream()
+                    .map(v -> registry.findEntity(getID(v)))
+                    .filter(Objects::nonNull)
+                    .collect(toSet());
+            inferred.removeAll(patient.getEntityProperties(propertyName));
+            patient.setInferredEntityProperties(propertyName, inferred);
+        });
+    }
+
+    /**
+     * Reasoner answers for a patient, not converted yet.
+     */
+    private static class InferredValues {
+        private final Patient patient;
+        private final Map<String, Set<OWLLiteral>> numericValues = new HashMap<>();
+        private final Map<String, Set<OWLLiteral>> stringValues = new HashMap<>();
+        private final Map<String, Set<OWLNamedIndividual>> entityValues = new HashMap<>();
+
+        private InferredValues(Patient patient) {
+            this.patient = patient;
+        }
     }
 
     private Range<Integer> calculateAgeRange(Rule rule, Variable ageVariable) {
@@ -358,94 +601,63 @@ public class OntologyWrapper {
         }
     }
 
-    private Collection<String> getPatientStringProperties(OWLIndividual patientInd, String propertyName) {
+    private Collection<String> getPatientStringProperties(OWLIndividual patientInd, String propertyName,
+                                                          AssertionsIndex assertions) {
         OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
-        return getDataPropertyValues(patientInd, property, ontology)
+        return assertions.getDataPropertyValues(patientInd, property)
                 .stream()
-                .map(renderer::render)
+                .map(OWLLiteral::getLiteral)
                 .collect(toSet());
     }
 
-    private Collection<Float> getPatientNumericProperties(OWLIndividual patientInd, String propertyName) {
+    private Collection<Float> getPatientNumericProperties(OWLIndividual patientInd, String propertyName,
+                                                          AssertionsIndex assertions) {
         OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
-        return getDataPropertyValues(patientInd, property, ontology)
+        return assertions.getDataPropertyValues(patientInd, property)
                 .stream()
-                .map(renderer::render)
+                .map(OWLLiteral::getLiteral)
                 .map(Float::parseFloat)
                 .collect(toSet());
     }
 
-    private Collection<Entity> getPatientObjectProperties(OWLIndividual patientInd, String propertyName) {
+    private Collection<Entity> getPatientObjectProperties(OWLIndividual patientInd, String propertyName,
+                                                          AssertionsIndex assertions) {
         OWLObjectProperty property = factory.getOWLObjectProperty(propertyName, prefixManager);
-        return getObjectPropertyValues(patientInd, property, ontology)
+        return assertions.getObjectPropertyValues(patientInd, property)
                 .stream()
-                .map(v -> findEntity(renderer.render(v), entities))
+                .map(v -> registry.findEntity(getID(v)))
                 .filter(Objects::nonNull)
                 .collect(toSet());
     }
 
-    private Collection<Float> getPatientInferredNumericProperty(OWLNamedIndividual patientInd, String propertyName, Collection<Float> assertedValues) {
-        OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
-        Set<Float> inferredEntities = reasoner.getDataPropertyValues(patientInd, property)
-                .stream()
-                .map(renderer::render)
-                .map(Float::parseFloat)
-                .collect(toSet());
-        inferredEntities.removeAll(assertedValues);
-        return inferredEntities;
-    }
-
-    private Collection<String> getPatientInferredStringProperty(OWLNamedIndividual patientInd, String propertyName, Collection<String> assertedValues) {
-        OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
-        Set<String> inferredEntities = reasoner.getDataPropertyValues(patientInd, property)
-                .stream()
-                .map(renderer::render)
-                .collect(toSet());
-        inferredEntities.removeAll(assertedValues);
-        return inferredEntities;
-    }
-
-    private Collection<Entity> getPatientInferredObjectProperty(OWLNamedIndividual patientInd, String propertyName, Collection<Entity> assertedValues) {
-        OWLObjectProperty property = factory.getOWLObjectProperty(propertyName, prefixManager);
-        Set<Entity> inferredEntities = reasoner.getObjectPropertyValues(patientInd, property).getFlattened()
-                .stream()
-                .map(v -> findEntity(renderer.render(v), entities))
-                .collect(toSet());
-        inferredEntities.removeAll(assertedValues);
-        return inferredEntities;
-    }
-
-    private void setPatientIndStringProperty(OWLIndividual patientInd, String propertyName, Collection<String> values) {
+    private void setPatientIndStringProperty(Set<OWLAxiom> axioms, OWLIndividual patientInd, String propertyName,
+                                             Collection<String> values) {
         OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
         values
                 .stream()
                 .filter(StringUtils::isNotBlank)
-                .forEach(v -> ontologyManager.addAxiom(
-                        ontology,
-                        factory.getOWLDataPropertyAssertionAxiom(property, patientInd, v)));
+                .forEach(v -> axioms.add(factory.getOWLDataPropertyAssertionAxiom(property, patientInd, v)));
     }
 
-    private void setPatientIndNumericProperty(OWLIndividual patientInd, String propertyName, Collection<Float> values) {
+    private void setPatientIndNumericProperty(Set<OWLAxiom> axioms, OWLIndividual patientInd, String propertyName,
+                                              Collection<Float> values) {
         OWLDataProperty property = factory.getOWLDataProperty(propertyName, prefixManager);
         values
                 .stream()
                 .filter(Objects::nonNull)
-                .forEach(v -> ontologyManager.addAxiom(
-                        ontology,
-                        factory.getOWLDataPropertyAssertionAxiom(property, patientInd, v)));
+                .forEach(v -> axioms.add(factory.getOWLDataPropertyAssertionAxiom(property, patientInd, v)));
     }
 
-    private void setPatientIndObjectProperty(OWLIndividual patientInd, String propertyName, Collection<Entity> entities) {
+    private void setPatientIndObjectProperty(Set<OWLAxiom> axioms, OWLIndividual patientInd, String propertyName,
+                                             Collection<Entity> entities) {
         OWLObjectProperty property = factory.getOWLObjectProperty(propertyName, prefixManager);
         entities
                 .stream()
                 .filter(Objects::nonNull)
-                .forEach(v -> ontologyManager.addAxiom(
-                        ontology,
-                        factory.getOWLObjectPropertyAssertionAxiom(
-                                property,
-                                patientInd,
-                                factory.getOWLNamedIndividual(v.getID(), prefixManager))));
+                .forEach(v -> axioms.add(factory.getOWLObjectPropertyAssertionAxiom(
+                        property,
+                        patientInd,
+                        factory.getOWLNamedIndividual(v.getID(), prefixManager))));
     }
 
     private void setEntityIndClasses(OWLNamedIndividual entityInd, Set<OntologyClass> classes) {
@@ -470,19 +682,32 @@ public class OntologyWrapper {
         ontologyManager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(classExpression, individual));
     }
 
-    private void generatePatientID(Patient patient) {
+    private void generatePatientIDs(Collection<Patient> patients) {
+        Set<String> reservedIDs = patients.stream()
+                .map(Patient::getID)
+                .filter(Objects::nonNull)
+                .collect(toSet());
+        Map<String, Integer> nextSuffixes = new HashMap<>();
+        for (Patient patient : patients)
+            generatePatientID(patient, reservedIDs, nextSuffixes);
+    }
+
+    /**
+     * Suffixes already tried for a name are remembered, so patients with equal names don't probe the same IDs again.
+     */
+    private void generatePatientID(Patient patient, Set<String> reservedIDs, Map<String, Integer> nextSuffixes) {
         if (patient.getID() == null) {
             String fn = patient.getFirstName();
             String ln = patient.getLastName();
-            if (containsID(NameUtils.generateName(fn, ln))) {
-                int i = 1;
-                String newID = NameUtils.generateName(fn, ln, Integer.toString(i));
-                while (containsID(newID)) {
-                    newID = NameUtils.generateName(fn, ln, Integer.toString(++i));
-                }
-                patient.setID(newID);
-            } else
-                patient.setID(NameUtils.generateName(fn, ln));
+            String name = NameUtils.generateName(fn, ln);
+            int i = nextSuffixes.getOrDefault(name, 0);
+            String newID = i == 0 ? name : NameUtils.generateName(fn, ln, Integer.toString(i));
+            while (reservedIDs.contains(newID) || containsID(newID)) {
+                newID = NameUtils.generateName(fn, ln, Integer.toString(++i));
+            }
+            nextSuffixes.put(name, i + 1);
+            reservedIDs.add(newID);
+            patient.setID(newID);
         }
     }
 
@@ -0,0 +1,125 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import pl.edu.agh.plonka.bartlomiej.menes.model.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.OptionalDouble;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.lang.Math.abs;
+
+/**
+ * Distances between training set rows used for seed selection. Distance of a tracked row to the covered set
+ * is kept as running sums which are updated only with newly covered rows.
+ */
+class PatientDistances {
+
+    private final EntityColumn[] entityColumns;
+    private final float[][] numericColumns;
+    private final float[] numericRanges;
+
+    private final int[] trackedRows;
+    private final double[] entitySums;
+    private final double[][] numericSums;
+    private final int[] numericCounts;
+    private int coveredCount;
+
+    PatientDistances(TrainingSet trainingSet, PremiseProperties premiseProperties, BitSet trackedRows) {
+        entityColumns = premiseProperties.objectProperties
+                .stream()
+                .map(property -> trainingSet.getEntityColumn(property.getID()))
+                .toArray(EntityColumn[]::new);
+        NumericProperty[] numericProperties = premiseProperties.integerProperties.toArray(new NumericProperty[0]);
+        numericColumns = new float[numericProperties.length][];
+        numericRanges = new float[numericProperties.length];
+        for (int i = 0; i < numericProperties.length; i++) {
+            numericColumns[i] = trainingSet.getNumericColumn(numericProperties[i].getID());
+            numericRanges[i] = range(numericProperties[i]);
+        }
+        this.trackedRows = trackedRows.stream().toArray();
+        entitySums = new double[this.trackedRows.length];
+        numericSums = new double[numericProperties.length][this.trackedRows.length];
+        numericCounts = new int[numericProperties.length];
+    }
+
+    void addCovered(BitSet newlyCovered, BitSet rowsToUpdate) {
+        int[] coveredRows = newlyCovered.stream().toArray();
+        rowsToUpdate.stream().parallel().forEach(row -> {
+            int position = Arrays.binarySearch(trackedRows, row);
+            if (position >= 0)
+                accumulate(position, row, coveredRows);
+        });
+        coveredCount += coveredRows.length;
+        for (int i = 0; i < numericColumns.length; i++) {
+            for (int coveredRow : coveredRows) {
+                if (!Float.isNaN(numericColumns[i][coveredRow]))
+                    numericCounts[i]++;
+            }
+        }
+    }
+
+    float distanceToCovered(int row) {
+        if (coveredCount == 0)
+            return 0;
+        int position = Arrays.binarySearch(trackedRows, row);
+        if (position < 0)
+            throw new IllegalArgumentException("Row " + row + " isn't tracked");
+
+        OptionalDouble entityEvaluation = entityColumns.length > 0
+                ? OptionalDouble.of(entitySums[position] / coveredCount / entityColumns.length)
+                : OptionalDouble.empty();
+        OptionalDouble numericEvaluation = IntStream.range(0, numericColumns.length)
+                .filter(i -> !Float.isNaN(numericColumns[i][row]) && numericCounts[i] > 0)
+                .mapToDouble(i -> numericSums[i][position] / numericCounts[i] / numericRanges[i])
+                .average();
+        return evaluation(entityEvaluation, numericEvaluation);
+    }
+
+    float distance(int row, int otherRow) {
+        OptionalDouble entityEvaluation = Arrays.stream(entityColumns)
+                .mapToDouble(column -> (double) column.symmetricDifference(row, otherRow) / column.getRangeSize())
+                .average();
+        OptionalDouble numericEvaluation = IntStream.range(0, numericColumns.length)
+                .filter(i -> !Float.isNaN(numericColumns[i][row]) && !Float.isNaN(numericColumns[i][otherRow]))
+                .mapToDouble(i -> abs(numericColumns[i][row] - numericColumns[i][otherRow]) / numericRanges[i])
+                .average();
+        return evaluation(entityEvaluation, numericEvaluation);
+    }
+
+    private void accumulate(int position, int row, int[] coveredRows) {
+        for (EntityColumn column : entityColumns) {
+            long difference = 0;
+            for (int coveredRow : coveredRows)
+                difference += column.symmetricDifference(row, coveredRow);
+            entitySums[position] += (double) difference / column.getRangeSize();
+        }
+        for (int i = 0; i < numericColumns.length; i++) {
+            float value = numericColumns[i][row];
+            if (Float.isNaN(value))
+                continue;
+            double difference = 0;
+            for (int coveredRow : coveredRows) {
+                float coveredValue = numericColumns[i][coveredRow];
+                if (!Float.isNaN(coveredValue))
+                    difference += abs(value - coveredValue);
+            }
+            numericSums[i][position] += difference;
+        }
+    }
+
+    private static float evaluation(OptionalDouble entityEvaluation, OptionalDouble numericEvaluation) {
+        return (float) Stream.of(entityEvaluation, numericEvaluation)
+                .filter(OptionalDouble::isPresent)
+                .mapToDouble(OptionalDouble::getAsDouble)
+                .average()
+                .orElseThrow(RuntimeException::new);
+    }
+
+    private static float range(NumericProperty property) {
+        if (property.getMaxValue() == null || property.getMinValue() == null)
+            return Float.NaN;
+        return property.getMaxValue() - property.getMinValue();
+    }
+}
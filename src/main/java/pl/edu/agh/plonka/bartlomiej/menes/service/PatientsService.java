@@ -5,17 +5,21 @@ import org.semanticweb.owlapi.model.OWLOntologyStorageException;
 import org.slf4j.Logger;
 import pl.edu.agh.plonka.bartlomiej.menes.exception.CreateRuleException;
 import pl.edu.agh.plonka.bartlomiej.menes.exception.RuleAlreadyExistsException;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
 import pl.edu.agh.plonka.bartlomiej.menes.model.ObjectProperty;
 import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
 import pl.edu.agh.plonka.bartlomiej.menes.model.RequiredEntitiesToLearn;
 import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.RuleSignature;
 
 import java.io.File;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
+import static java.lang.String.format;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.slf4j.LoggerFactory.getLogger;
 import static pl.edu.agh.plonka.bartlomiej.menes.utils.Constants.GENERATED_RULE_PREFIX;
@@ -28,6 +32,8 @@ public class PatientsService {
     private MachineLearning machineLearning;
     private Set<Patient> patients;
     private Set<Rule> rules;
+    private RuleEvaluator ruleEvaluator;
+    private RulesChanges lastRulesChanges;
 
     public PatientsService(String url) throws OWLOntologyCreationException {
         createKnowledgeBase(url);
@@ -49,12 +55,14 @@ public class PatientsService {
         ontology = new OntologyWrapper(url);
         patients = new HashSet<>();
         rules = new HashSet<>();
+        ruleEvaluator = null;
     }
 
     public void createKnowledgeBase(File file) throws OWLOntologyCreationException {
         ontology = new OntologyWrapper(file);
         patients = new HashSet<>(ontology.getPatients());
         rules = new HashSet<>(ontology.getRules());
+        ruleEvaluator = null;
     }
 
     public void saveKnowledgeBase(File file) throws OWLOntologyStorageException {
@@ -70,12 +78,10 @@ public class PatientsService {
         patients.add(patient);
     }
 
-    public void addPatients(Collection<Patient> patients) {
-        patients.forEach(p -> {
-            ontology.addPatient(p);
-            this.patients.add(p);
-        });
-
+    public ImportSummary addPatients(Collection<Patient> patients) {
+        ImportSummary summary = ontology.addPatients(patients);
+        this.patients.addAll(patients);
+        return summary;
     }
 
     public void deletePatient(Patient patient) {
@@ -94,7 +100,7 @@ public class PatientsService {
     }
 
     public Collection<Patient> updatePatients(Collection<Patient> patients) {
-        patients.forEach(p -> ontology.updatePatient(p));
+        ontology.updatePatients(patients);
         return patients;
     }
 
@@ -102,33 +108,62 @@ public class PatientsService {
         return new HashSet<>(rules);
     }
 
+    public RulesBatch rulesBatch() {
+        return new RulesBatch(this);
+    }
+
     public void addRule(Rule rule) throws RuleAlreadyExistsException, CreateRuleException {
-        if (rules.contains(rule))
-            throw new RuleAlreadyExistsException(rule);
-        ontology.addRule(rule);
-        rules.add(rule);
-        updatePatients(patients);
+        rulesBatch().addRule(rule).apply();
     }
 
     public void addRules(Collection<Rule> rules) throws RuleAlreadyExistsException, CreateRuleException {
-        for (Rule rule : rules)
-            addRule(rule);
+        rulesBatch().addRules(rules).apply();
     }
 
     public void deleteRule(Rule rule) {
-        this.ontology.deleteRule(rule);
-        this.rules.remove(rule);
-        updatePatients(patients);
+        deleteRules(singleton(rule));
     }
 
     public void deleteRules(Collection<Rule> rules) {
-        this.ontology.deleteRules(rules);
-        this.rules.removeAll(rules);
-        updatePatients(patients);
+        try {
+            applyRuleChanges(rules, emptyList());
+        } catch (RuleAlreadyExistsException | CreateRuleException e) {
+            // not thrown when no rules are added
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Deletes and then adds rules in a single ontology change. Nothing is changed if any added rule already exists
+     * or can't be created. Patients are rewritten once, and only if the batch changes the content of the rules.
+     */
+    void applyRuleChanges(Collection<Rule> rulesToDelete, Collection<Rule> rulesToAdd)
+            throws RuleAlreadyExistsException, CreateRuleException {
+        if (rulesToDelete.isEmpty() && rulesToAdd.isEmpty())
+            return;
+        Set<Rule> remainingRules = new HashSet<>(rules);
+        remainingRules.removeAll(rulesToDelete);
+        for (Rule rule : rulesToAdd) {
+            if (!remainingRules.add(rule))
+                throw new RuleAlreadyExistsException(rule);
+        }
+
+        boolean contentChanged = !signatures(rules).equals(signatures(remainingRules));
+        ontology.replaceRules(rulesToDelete, rulesToAdd);
+        rules.removeAll(rulesToDelete);
+        rules.addAll(rulesToAdd);
+        ruleEvaluator = null;
+        if (contentChanged)
+            updatePatients(patients);
+    }
+
+    private static Set<RuleSignature> signatures(Collection<Rule> rules) {
+        return rules.stream().map(Rule::getSignature).collect(toSet());
     }
 
     public void deleteAllRules() {
         rules.clear();
+        ruleEvaluator = null;
         ontology.deleteRules();
     }
 
@@ -144,20 +179,71 @@ public class PatientsService {
         ontology.changeLanguage();
     }
 
-    public void infer() {
-        patients.forEach(ontology::getInferredPatient);
+    public InferenceSummary infer() {
+        return ontology.getInferredPatients(patients);
+    }
+
+    /**
+     * Infers consequences of the rules without the reasoner if all of them are compiled by {@link RuleEvaluator},
+     * otherwise falls back to {@link #infer()}. The reasoner then infers consequences of all the rules, as rules not
+     * compiled may use consequences of the compiled ones, e.g. a treatment rule matching any inferred disease.
+     */
+    public InferenceSummary inferByRules() {
+        RuleEvaluator evaluator = getRuleEvaluator();
+        if (!evaluator.isComplete()) {
+            LOG.info("Inferring by the reasoner, rules not compiled: {}", evaluator.getNotCompiledRules().stream()
+                    .map(Rule::getName)
+                    .collect(toList()));
+            return infer();
+        }
+        return evaluator.infer(patients);
+    }
+
+    /**
+     * Entity properties inferred for the patient, who doesn't have to be in the knowledge base, by the rules
+     * compiled by {@link RuleEvaluator}. Only rules with some condition met by the patient are tried, rules which
+     * need the reasoner are skipped. The patient is not changed.
+     */
+    public Map<String, Set<Entity>> classify(Patient patient) {
+        return getRuleEvaluator().classify(patient);
+    }
+
+    /**
+     * Entity properties inferred for each of the patients, who don't have to be in the knowledge base. If some rule
+     * needs the reasoner, the patients are added to the ontology for a single inference and deleted afterwards.
+     */
+    public List<Map<String, Set<Entity>>> classify(List<Patient> patients) {
+        RuleEvaluator evaluator = getRuleEvaluator();
+        if (evaluator.isComplete())
+            return patients.parallelStream().map(evaluator::classify).collect(toList());
+
+        ontology.addPatients(patients);
+        try {
+            ontology.getInferredPatients(patients);
+            return patients.stream()
+                    .map(patient -> new HashMap<>(patient.getInferredEntityProperties()))
+                    .collect(toList());
+        } finally {
+            ontology.deletePatients(patients);
+        }
+    }
+
+    private RuleEvaluator getRuleEvaluator() {
+        if (ruleEvaluator == null)
+            ruleEvaluator = new RuleEvaluator(rules);
+        return ruleEvaluator;
     }
 
     public void infer(RequiredEntitiesToLearn requiredEntities, Set<ObjectProperty> predicateCategories) throws Throwable {
+        ontology.getInferredPatients(patients);
         Collection<Patient> invalidPatients = patients.stream()
-                .map(ontology::getInferredPatient)
                 .filter(requiredEntities::invalidPatient)
                 .collect(Collectors.toSet());
         if (!invalidPatients.isEmpty()) {
             Set<Patient> trainingSet = new HashSet<>(getPatients());
             trainingSet.removeAll(invalidPatients);
             learnNewRules(trainingSet, predicateCategories);
-            patients.forEach(ontology::getInferredPatient);
+            ontology.getInferredPatients(patients);
         }
     }
 
@@ -165,17 +251,61 @@ public class PatientsService {
         return learnNewRules(new HashSet<>(patients), predicateCategories);
     }
 
+    /**
+     * Replaces the generated rules with the rules learned from the training set. Only rules whose content changed are
+     * deleted and added, see {@link #getLastRulesChanges()}.
+     */
     public Set<Rule> learnNewRules(Set<Patient> trainingSet, Set<ObjectProperty> predicateCategories) throws Throwable {
         Collection<Rule> newGeneratedRules = machineLearning.sequentialCovering(trainingSet, predicateCategories);
-        Set<Rule> oldGeneratedRules = getRules()
-                .stream()
-                .filter(this::isGeneratedRule)
-                .collect(toSet());
-        deleteRules(oldGeneratedRules);
-        addRules(newGeneratedRules);
+        RulesChanges changes = diffGeneratedRules(newGeneratedRules);
+        rulesBatch()
+                .deleteRules(changes.getDeletedRules())
+                .addRules(changes.getAddedRules())
+                .apply();
+        lastRulesChanges = changes;
+        LOG.info("Learned rules: {}", changes);
         return new HashSet<>(rules);
     }
 
+    /**
+     * Changes of the generated rules made by the last {@link #learnNewRules(Set, Set)} run.
+     */
+    public RulesChanges getLastRulesChanges() {
+        return lastRulesChanges;
+    }
+
+    /**
+     * Generated rules with the same {@link RuleSignature} as some learned rule are kept with their names, the other
+     * ones are deleted. Learned rules are added under their names unless taken by a kept rule, then a suffix is added.
+     */
+    private RulesChanges diffGeneratedRules(Collection<Rule> newGeneratedRules) {
+        Map<RuleSignature, Rule> oldGeneratedRules = new HashMap<>();
+        List<Rule> deletedRules = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (isGeneratedRule(rule) && oldGeneratedRules.putIfAbsent(rule.getSignature(), rule) != null)
+                deletedRules.add(rule);
+        }
+        List<Rule> addedRules = new ArrayList<>();
+        List<Rule> unchangedRules = new ArrayList<>();
+        for (Rule rule : newGeneratedRules) {
+            Rule oldRule = oldGeneratedRules.remove(rule.getSignature());
+            if (oldRule != null)
+                unchangedRules.add(oldRule);
+            else
+                addedRules.add(rule);
+        }
+        deletedRules.addAll(oldGeneratedRules.values());
+
+        Set<String> takenNames = rules.stream().map(Rule::getName).collect(toSet());
+        deletedRules.forEach(rule -> takenNames.remove(rule.getName()));
+        for (Rule rule : addedRules) {
+            String name = rule.getName();
+            for (int suffix = 1; !takenNames.add(name); suffix++)
+                name = format("%s_%d", rule.getName(), suffix);
+            rule.setName(name);
+        }
+        return new RulesChanges(addedRules, deletedRules, unchangedRules);
+    }
 
     private boolean isGeneratedRule(Rule rule) {
         return rule.getName().trim().startsWith(GENERATED_RULE_PREFIX);
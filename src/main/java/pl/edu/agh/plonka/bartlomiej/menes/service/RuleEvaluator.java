@@ -0,0 +1,75 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import org.slf4j.Logger;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Complex;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+
+import java.util.*;
+
+import static java.util.Collections.emptySet;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Forward chaining of rules over patients, without the reasoner. Only rules about a single patient are compiled,
+ * like the rules generated by {@link Complex#generateRule}, see {@link CompiledRule}. Rules are matched through a
+ * {@link RuleIndex}. Only consequences of the rules are inferred, other axioms of the ontology are not taken into
+ * account.
+ */
+class RuleEvaluator {
+
+    private static final Logger LOG = getLogger(RuleEvaluator.class);
+
+    private final RuleIndex index;
+    private final Set<String> inferredProperties = new HashSet<>();
+    private final List<Rule> notCompiledRules = new ArrayList<>();
+
+    RuleEvaluator(Collection<Rule> rules) {
+        List<CompiledRule> compiledRules = new ArrayList<>();
+        for (Rule rule : rules) {
+            CompiledRule compiledRule = CompiledRule.compile(rule);
+            if (compiledRule != null) {
+                compiledRules.add(compiledRule);
+                inferredProperties.addAll(compiledRule.head.keySet());
+            } else {
+                notCompiledRules.add(rule);
+            }
+        }
+        index = new RuleIndex(compiledRules);
+        LOG.debug("Compiled {} rules into {} nodes, {} rules not compiled",
+                compiledRules.size(), index.getNodesCount(), notCompiledRules.size());
+    }
+
+    Collection<Rule> getNotCompiledRules() {
+        return notCompiledRules;
+    }
+
+    boolean isComplete() {
+        return notCompiledRules.isEmpty();
+    }
+
+    /**
+     * Fills inferred entity properties of the patients with consequences of the compiled rules.
+     */
+    InferenceSummary infer(Collection<Patient> patients) {
+        long start = System.nanoTime();
+        patients.parallelStream().forEach(this::infer);
+        InferenceSummary summary = new InferenceSummary(patients.size(), 0, System.nanoTime() - start);
+        LOG.debug("Inferred by rules {}", summary);
+        return summary;
+    }
+
+    /**
+     * Entity properties inferred for the patient by the compiled rules, the patient is not changed.
+     */
+    Map<String, Set<Entity>> classify(Patient patient) {
+        return index.activate(patient).getDerived();
+    }
+
+    private void infer(Patient patient) {
+        Map<String, Set<Entity>> derived = classify(patient);
+        for (String property : inferredProperties)
+            patient.setInferredEntityProperties(property, derived.getOrDefault(property, emptySet()));
+    }
+}
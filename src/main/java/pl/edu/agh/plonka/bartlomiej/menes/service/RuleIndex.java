@@ -0,0 +1,328 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
+import pl.edu.agh.plonka.bartlomiej.menes.service.CompiledRule.NumericCondition;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * Discrimination network over compiled rules. Every distinct condition is a node shared by all the rules having it:
+ * (property, entity) nodes are found by the patient's entities, numeric nodes by intervals containing the
+ * patient's values and existence nodes by properties having any value. A rule is fired when all its nodes are
+ * satisfied, so only rules with some condition satisfied by the patient are touched. Consequences of fired rules
+ * satisfy further nodes until no new fact is derived.
+ * Safe for concurrent use once created.
+ */
+class RuleIndex {
+
+    private final CompiledRule[] rules;
+    private final int[] conditionsCounts;
+    private final Map<String, Map<Entity, Node>> entityNodes = new HashMap<>();
+    private final Map<String, NumericIntervals> numericNodes = new HashMap<>();
+    private final Map<String, Node> existenceNodes = new HashMap<>();
+    private final List<Integer> unconditionalRules = new ArrayList<>();
+    private int nodesCount;
+
+    RuleIndex(Collection<CompiledRule> compiledRules) {
+        rules = compiledRules.stream().filter(CompiledRule::isSatisfiable).toArray(CompiledRule[]::new);
+        conditionsCounts = new int[rules.length];
+        Map<String, Map<Range<Float>, Node>> numericNodesByRange = new HashMap<>();
+        for (int ruleId = 0; ruleId < rules.length; ruleId++) {
+            CompiledRule rule = rules[ruleId];
+            Set<Node> nodes = new HashSet<>();
+            rule.entityConditions.forEach((property, entities) -> entities.forEach(entity ->
+                    nodes.add(entityNodes
+                            .computeIfAbsent(property, p -> new HashMap<>())
+                            .computeIfAbsent(entity, e -> new Node()))));
+            for (NumericCondition condition : rule.numericConditions)
+                nodes.add(numericNodesByRange
+                        .computeIfAbsent(condition.property, p -> new HashMap<>())
+                        .computeIfAbsent(condition.range, r -> new Node()));
+            for (String property : rule.existenceConditions)
+                nodes.add(existenceNodes.computeIfAbsent(property, p -> new Node()));
+
+            for (Node node : nodes)
+                node.addRule(ruleId);
+            conditionsCounts[ruleId] = nodes.size();
+            if (nodes.isEmpty())
+                unconditionalRules.add(ruleId);
+        }
+        numericNodesByRange.forEach((property, nodes) -> numericNodes.put(property, new NumericIntervals(nodes)));
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    int getNodesCount() {
+        return nodesCount;
+    }
+
+    /**
+     * Fires rules for the patient, the patient is not changed.
+     */
+    Activation activate(Patient patient) {
+        Activation activation = new Activation(patient);
+        unconditionalRules.forEach(activation.agenda::add);
+        patient.getNumericProperties().forEach((property, values) -> {
+            NumericIntervals intervals = numericNodes.get(property);
+            for (Float value : values) {
+                if (intervals != null && value != null)
+                    intervals.forEachContaining(value, activation::satisfy);
+            }
+            if (!values.isEmpty())
+                activation.satisfy(existenceNodes.get(property));
+        });
+        patient.getStringProperties().forEach((property, values) -> {
+            if (!values.isEmpty())
+                activation.satisfy(existenceNodes.get(property));
+        });
+        patient.getBooleanProperties().forEach((property, values) -> {
+            if (!values.isEmpty())
+                activation.satisfy(existenceNodes.get(property));
+        });
+        patient.getEntityProperties().forEach((property, entities) -> entities.forEach(entity ->
+                activation.addFact(property, entity)));
+        activation.run();
+        return activation;
+    }
+
+    /**
+     * Fired rules and facts derived for a patient, apart from the asserted ones.
+     */
+    class Activation {
+
+        private final Patient patient;
+        private final int[] satisfiedCounts = new int[rules.length];
+        private final BitSet satisfiedNodes = new BitSet(nodesCount);
+        private final Deque<Integer> agenda = new ArrayDeque<>();
+        private final List<CompiledRule> firedRules = new ArrayList<>();
+        private final Map<String, Set<Entity>> derived = new HashMap<>();
+
+        private Activation(Patient patient) {
+            this.patient = patient;
+        }
+
+        List<CompiledRule> getFiredRules() {
+            return firedRules;
+        }
+
+        Map<String, Set<Entity>> getDerived() {
+            return derived;
+        }
+
+        private void run() {
+            while (!agenda.isEmpty()) {
+                CompiledRule rule = rules[agenda.poll()];
+                firedRules.add(rule);
+                rule.head.forEach((property, entities) -> {
+                    for (Entity entity : entities) {
+                        if (!patient.getEntityProperties(property).contains(entity)
+                                && derived.computeIfAbsent(property, p -> new HashSet<>()).add(entity))
+                            addFact(property, entity);
+                    }
+                });
+            }
+        }
+
+        private void addFact(String property, Entity entity) {
+            satisfy(entityNodes.getOrDefault(property, emptyMap()).get(entity));
+            satisfy(existenceNodes.get(property));
+        }
+
+        private void satisfy(Node node) {
+            if (node == null || satisfiedNodes.get(node.id))
+                return;
+            satisfiedNodes.set(node.id);
+            for (int i = 0; i < node.rulesCount; i++) {
+                int ruleId = node.rules[i];
+                if (++satisfiedCounts[ruleId] == conditionsCounts[ruleId])
+                    agenda.add(ruleId);
+            }
+        }
+    }
+
+    private class Node {
+
+        private final int id = nodesCount++;
+        private int[] rules = new int[1];
+        private int rulesCount;
+
+        private void addRule(int ruleId) {
+            if (rulesCount == rules.length)
+                rules = Arrays.copyOf(rules, 2 * rulesCount);
+            rules[rulesCount++] = ruleId;
+        }
+    }
+
+    /**
+     * Numeric nodes of a property arranged for stabbing queries, so the intervals containing a value are found in
+     * O(log n + k) time. Intervals bounded only from below are sorted so the ones containing a value form a prefix,
+     * intervals bounded only from above so they form a suffix, both found by binary search. Intervals bounded from
+     * both sides are kept in an {@link IntervalTree}.
+     */
+    private static class NumericIntervals {
+
+        private static final Comparator<Interval> BY_LOWER = Comparator
+                .comparingDouble((Interval interval) -> interval.lower)
+                .thenComparing(interval -> !interval.lowerClosed);
+        private static final Comparator<Interval> BY_UPPER = Comparator
+                .comparingDouble((Interval interval) -> interval.upper)
+                .thenComparing(interval -> interval.upperClosed);
+
+        private final Interval[] lowerBounded;
+        private final Interval[] upperBounded;
+        private final List<Node> unbounded = new ArrayList<>();
+        private final IntervalTree bounded;
+
+        private NumericIntervals(Map<Range<Float>, Node> nodesByRange) {
+            List<Interval> lowerBoundedList = new ArrayList<>();
+            List<Interval> upperBoundedList = new ArrayList<>();
+            List<Interval> boundedList = new ArrayList<>();
+            nodesByRange.forEach((range, node) -> {
+                if (range.hasLowerBound() && range.hasUpperBound())
+                    boundedList.add(new Interval(range, node));
+                else if (range.hasLowerBound())
+                    lowerBoundedList.add(new Interval(range, node));
+                else if (range.hasUpperBound())
+                    upperBoundedList.add(new Interval(range, node));
+                else
+                    unbounded.add(node);
+            });
+            lowerBounded = lowerBoundedList.stream().sorted(BY_LOWER).toArray(Interval[]::new);
+            upperBounded = upperBoundedList.stream().sorted(BY_UPPER).toArray(Interval[]::new);
+            bounded = IntervalTree.create(boundedList);
+        }
+
+        private void forEachContaining(float value, Consumer<Node> action) {
+            unbounded.forEach(action);
+            int lowerEnd = firstMatching(lowerBounded, interval -> !interval.lowerMatches(value));
+            for (int i = 0; i < lowerEnd; i++)
+                action.accept(lowerBounded[i].node);
+            int upperStart = firstMatching(upperBounded, interval -> interval.upperMatches(value));
+            for (int i = upperStart; i < upperBounded.length; i++)
+                action.accept(upperBounded[i].node);
+            if (bounded != null)
+                bounded.forEachContaining(value, action);
+        }
+
+        /**
+         * Index of the first interval matching the predicate, which must be false for a prefix of the intervals and
+         * true for the rest of them.
+         */
+        private static int firstMatching(Interval[] intervals, Predicate<Interval> predicate) {
+            int low = 0;
+            int high = intervals.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (predicate.test(intervals[middle]))
+                    high = middle;
+                else
+                    low = middle + 1;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Centered interval tree. Intervals whose closure contains the center are kept in the node sorted by both
+     * endpoints, the ones entirely below or above the center in the subtrees. The center is the median endpoint, so
+     * every node keeps some interval and the tree has logarithmic depth.
+     */
+    private static class IntervalTree {
+
+        private final float center;
+        private final Interval[] byLower;
+        private final Interval[] byUpper;
+        private final IntervalTree below;
+        private final IntervalTree above;
+
+        private IntervalTree(float center, List<Interval> intervals, IntervalTree below, IntervalTree above) {
+            this.center = center;
+            this.byLower = intervals.stream().sorted(NumericIntervals.BY_LOWER).toArray(Interval[]::new);
+            this.byUpper = intervals.stream().sorted(NumericIntervals.BY_UPPER.reversed()).toArray(Interval[]::new);
+            this.below = below;
+            this.above = above;
+        }
+
+        private static IntervalTree create(List<Interval> intervals) {
+            if (intervals.isEmpty())
+                return null;
+            float[] endpoints = new float[2 * intervals.size()];
+            for (int i = 0; i < intervals.size(); i++) {
+                endpoints[2 * i] = intervals.get(i).lower;
+                endpoints[2 * i + 1] = intervals.get(i).upper;
+            }
+            Arrays.sort(endpoints);
+            float center = endpoints[intervals.size()];
+            List<Interval> containing = new ArrayList<>();
+            List<Interval> below = new ArrayList<>();
+            List<Interval> above = new ArrayList<>();
+            for (Interval interval : intervals) {
+                if (interval.upper < center)
+                    below.add(interval);
+                else if (interval.lower > center)
+                    above.add(interval);
+                else
+                    containing.add(interval);
+            }
+            return new IntervalTree(center, containing, create(below), create(above));
+        }
+
+        /**
+         * Below the center only the lower endpoints of the node's intervals have to be checked, above it only the
+         * upper ones, in both cases the matching intervals come first.
+         */
+        private void forEachContaining(float value, Consumer<Node> action) {
+            if (value < center) {
+                for (int i = 0; i < byLower.length && byLower[i].lowerMatches(value); i++)
+                    action.accept(byLower[i].node);
+                if (below != null)
+                    below.forEachContaining(value, action);
+            } else if (value > center) {
+                for (int i = 0; i < byUpper.length && byUpper[i].upperMatches(value); i++)
+                    action.accept(byUpper[i].node);
+                if (above != null)
+                    above.forEachContaining(value, action);
+            } else {
+                for (int i = 0; i < byLower.length && byLower[i].lowerMatches(value); i++) {
+                    if (byLower[i].upperMatches(value))
+                        action.accept(byLower[i].node);
+                }
+            }
+        }
+    }
+
+    private static class Interval {
+
+        private final float lower;
+        private final boolean lowerClosed;
+        private final float upper;
+        private final boolean upperClosed;
+        private final Node node;
+
+        private Interval(Range<Float> range, Node node) {
+            // adding 0 turns -0.0 into 0.0, which are equal for the comparisons below but not when sorting
+            this.lower = range.hasLowerBound() ? range.lowerEndpoint() + 0f : Float.NEGATIVE_INFINITY;
+            this.lowerClosed = range.hasLowerBound() && range.lowerBoundType() == BoundType.CLOSED;
+            this.upper = range.hasUpperBound() ? range.upperEndpoint() + 0f : Float.POSITIVE_INFINITY;
+            this.upperClosed = range.hasUpperBound() && range.upperBoundType() == BoundType.CLOSED;
+            this.node = node;
+        }
+
+        private boolean lowerMatches(float value) {
+            return lower < value || lower == value && lowerClosed;
+        }
+
+        private boolean upperMatches(float value) {
+            return value < upper || value == upper && upperClosed;
+        }
+    }
+}
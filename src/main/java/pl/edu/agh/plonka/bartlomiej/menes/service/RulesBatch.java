@@ -0,0 +1,52 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import pl.edu.agh.plonka.bartlomiej.menes.exception.CreateRuleException;
+import pl.edu.agh.plonka.bartlomiej.menes.exception.RuleAlreadyExistsException;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+
+import java.util.*;
+
+/**
+ * Rule additions and deletions staged to be applied to a {@link PatientsService} at once.
+ * Deletions are applied before additions, so a rule can be replaced by a rule with the same name.
+ */
+public class RulesBatch {
+
+    private final PatientsService patientsService;
+    private final Set<Rule> rulesToDelete = new LinkedHashSet<>();
+    private final List<Rule> rulesToAdd = new ArrayList<>();
+
+    RulesBatch(PatientsService patientsService) {
+        this.patientsService = patientsService;
+    }
+
+    public RulesBatch addRule(Rule rule) {
+        rulesToAdd.add(rule);
+        return this;
+    }
+
+    public RulesBatch addRules(Collection<Rule> rules) {
+        rulesToAdd.addAll(rules);
+        return this;
+    }
+
+    public RulesBatch deleteRule(Rule rule) {
+        rulesToDelete.add(rule);
+        return this;
+    }
+
+    public RulesBatch deleteRules(Collection<Rule> rules) {
+        rulesToDelete.addAll(rules);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return rulesToDelete.isEmpty() && rulesToAdd.isEmpty();
+    }
+
+    public void apply() throws RuleAlreadyExistsException, CreateRuleException {
+        patientsService.applyRuleChanges(rulesToDelete, rulesToAdd);
+        rulesToDelete.clear();
+        rulesToAdd.clear();
+    }
+}
@@ -0,0 +1,47 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+
+import java.util.List;
+import java.util.Set;
+
+import static java.lang.String.format;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Generated rules added, deleted and kept by a {@link PatientsService#learnNewRules(Set, Set)} run.
+ */
+public class RulesChanges {
+
+    private final List<Rule> addedRules;
+    private final List<Rule> deletedRules;
+    private final List<Rule> unchangedRules;
+
+    RulesChanges(List<Rule> addedRules, List<Rule> deletedRules, List<Rule> unchangedRules) {
+        this.addedRules = unmodifiableList(addedRules);
+        this.deletedRules = unmodifiableList(deletedRules);
+        this.unchangedRules = unmodifiableList(unchangedRules);
+    }
+
+    public List<Rule> getAddedRules() {
+        return addedRules;
+    }
+
+    public List<Rule> getDeletedRules() {
+        return deletedRules;
+    }
+
+    public List<Rule> getUnchangedRules() {
+        return unchangedRules;
+    }
+
+    public boolean isEmpty() {
+        return addedRules.isEmpty() && deletedRules.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return format("%d rules added, %d deleted, %d unchanged",
+                addedRules.size(), deletedRules.size(), unchangedRules.size());
+    }
+}
@@ -1,160 +1,319 @@
 package pl.edu.agh.plonka.bartlomiej.menes.service;
 
-import org.apache.commons.lang3.StringUtils;
-import org.semanticweb.owlapi.model.SWRLAtom;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.util.ShortFormProvider;
+import org.semanticweb.owlapi.util.SimpleShortFormProvider;
+import org.semanticweb.owlapi.vocab.Namespaces;
 import org.slf4j.Logger;
-import org.swrlapi.core.SWRLAPIOWLOntology;
-import org.swrlapi.core.SWRLAPIRule;
-import org.swrlapi.exceptions.SWRLBuiltInException;
-import org.swrlapi.parser.SWRLParseException;
 import pl.edu.agh.plonka.bartlomiej.menes.exception.CreateRuleException;
 import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.EntityRegistry;
 import pl.edu.agh.plonka.bartlomiej.menes.model.OntologyClass;
 import pl.edu.agh.plonka.bartlomiej.menes.model.rule.*;
-import pl.edu.agh.plonka.bartlomiej.menes.utils.Others;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.*;
 
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.semanticweb.owlapi.model.parameters.Imports.EXCLUDED;
+import static org.semanticweb.owlapi.model.parameters.Imports.INCLUDED;
 import static org.slf4j.LoggerFactory.getLogger;
-import static pl.edu.agh.plonka.bartlomiej.menes.utils.Others.findEntity;
+import static pl.edu.agh.plonka.bartlomiej.menes.utils.Constants.SWRLB_PREFIX;
 
 public class RulesManager {
 
     private static final Logger LOG = getLogger(RulesManager.class);
 
-    private final SWRLAPIOWLOntology ruleOntology;
+    private final OWLOntology ontology;
+    private final OWLOntologyManager ontologyManager;
+    private final OWLDataFactory factory;
+    private final PrefixManager prefixManager;
+    private final EntityRegistry registry;
+    private final ShortFormProvider shortFormProvider = new SimpleShortFormProvider();
 
-    RulesManager(SWRLAPIOWLOntology ruleOntology) {
-        this.ruleOntology = ruleOntology;
+    RulesManager(OWLOntology ontology, PrefixManager prefixManager, EntityRegistry registry) {
+        this.ontology = ontology;
+        this.ontologyManager = ontology.getOWLOntologyManager();
+        this.factory = ontologyManager.getOWLDataFactory();
+        this.prefixManager = prefixManager;
+        this.registry = registry;
     }
 
     public void addRule(Rule rule) throws CreateRuleException {
-        try {
-            ruleOntology.createSWRLRule(rule.getName(), rule.toString());
-        } catch (SWRLParseException | SWRLBuiltInException e) {
-            throw new CreateRuleException(rule, e);
-        }
+        addRules(singleton(rule));
+    }
+
+    public void addRules(Collection<Rule> rules) throws CreateRuleException {
+        replaceRules(emptyList(), rules);
     }
 
     public void deleteRule(Rule rule) {
-        ruleOntology.deleteSWRLRule(rule.getName());
+        deleteRules(singleton(rule));
     }
 
     public void deleteRules(Collection<Rule> rules) {
-        rules.forEach(rule -> ruleOntology.deleteSWRLRule(rule.getName()));
+        ontologyManager.applyChanges(deleteRulesChanges(rules));
     }
 
-    public void deleteRules() {
-        ruleOntology.reset();
-    }
-
-    public Collection<Rule> loadRules(Set<OntologyClass> classes, Set<Entity> entities) {
-        Collection<Rule> rules = new ArrayList<>();
-        for (SWRLAPIRule swrlRule : ruleOntology.getSWRLRules()) {
-            Rule rule = new Rule(swrlRule.getRuleName());
-            for (SWRLAtom atom : swrlRule.getBody()) {
-                AbstractAtom bodyAtom = parseSWRLAtom(atom, classes, entities);
-                if (isDeclarationAtom(bodyAtom))
-                    rule.addDeclarationAtom(bodyAtom);
-                else
-                    rule.addBodyAtom(bodyAtom);
-            }
-            for (SWRLAtom atom : swrlRule.getHead()) {
-                rule.addHeadAtom(parseSWRLAtom(atom, classes, entities));
+    /**
+     * Deletes and adds rules in one change. All the added rules are converted before anything is changed, so
+     * nothing is changed if some rule can't be converted.
+     */
+    public void replaceRules(Collection<Rule> rulesToDelete, Collection<Rule> rulesToAdd) throws CreateRuleException {
+        List<OWLOntologyChange> addChanges = addRulesChanges(rulesToAdd);
+        List<OWLOntologyChange> changes = deleteRulesChanges(rulesToDelete);
+        changes.addAll(addChanges);
+        if (!changes.isEmpty())
+            ontologyManager.applyChanges(changes);
+        LOG.debug("Deleted {} and added {} rules", changes.size() - addChanges.size(), addChanges.size());
+    }
+
+    private List<OWLOntologyChange> addRulesChanges(Collection<Rule> rules) throws CreateRuleException {
+        List<OWLOntologyChange> changes = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            try {
+                changes.add(new AddAxiom(ontology, createSWRLRule(rule)));
+            } catch (IllegalArgumentException e) {
+                throw new CreateRuleException(rule, e);
             }
-            rules.add(rule);
         }
+        return changes;
+    }
+
+    /**
+     * Rule axioms are found by their labels.
+     */
+    private List<OWLOntologyChange> deleteRulesChanges(Collection<Rule> rules) {
+        if (rules.isEmpty())
+            return new ArrayList<>();
+        Set<String> names = rules.stream().map(Rule::getName).collect(toSet());
+        return ontology.getAxioms(AxiomType.SWRL_RULE, EXCLUDED)
+                .stream()
+                .filter(axiom -> names.contains(getRuleName(axiom)))
+                .map(axiom -> new RemoveAxiom(ontology, axiom))
+                .collect(toList());
+    }
+
+    public void deleteRules() {
+        ontologyManager.removeAxioms(ontology, ontology.getAxioms(AxiomType.SWRL_RULE, EXCLUDED));
+    }
+
+    /**
+     * Rules are read from the SWRL rule axioms of the ontology, named by their rdfs:label annotations.
+     * Rules without a label can't be referred to by name and are skipped, as are rules with unsupported atoms.
+     */
+    public Collection<Rule> loadRules() {
+        List<Rule> rules = ontology.getAxioms(AxiomType.SWRL_RULE, EXCLUDED)
+                .parallelStream()
+                .map(this::parseRule)
+                .filter(Objects::nonNull)
+                .collect(toList());
+        LOG.debug("Loaded {} rules", rules.size());
         return rules;
     }
 
-    @SuppressWarnings("unchecked")
-    private AbstractAtom parseSWRLAtom(SWRLAtom swrlAtom, Set<OntologyClass> classes, Set<Entity> entities) {
-        String str = swrlAtom.toString();
-        Pattern atomPattern = Pattern
-                .compile("^(?<atomType>\\p{Alpha}+)\\(<\\S+#(?<atomID>\\w+)> (?<atomArguments>.+)\\)$");
-        Pattern argumentPattern = Pattern.compile(
-                "((?<argumentType>\\p{Alpha}*)\\(?<\\S+#(?<argumentID>\\w+)>\\)?)|(\"(?<value>\\d+)\"\\^\\^xsd:(?<valueType>[a-z]+))");
-        Matcher atomMatcher = atomPattern.matcher(str);
-        if (atomMatcher.find()) {
-
-            String atomType = atomMatcher.group("atomType");
-            String atomID = atomMatcher.group("atomID");
-            String atomArguments = atomMatcher.group("atomArguments");
-            Matcher argumentMatcher = argumentPattern.matcher(atomArguments);
-
-            // class declaration
-            if (atomType.equals("ClassAtom")) {
-                return parseClassAtom(atomID, argumentMatcher, classes, entities);
-            } else if (atomType.equals("ObjectPropertyAtom") || atomType.equals("DataPropertyAtom")
-                    || atomType.equals("BuiltInAtom")) { // property
-                return parseTwoArgumentsAtom(atomType, atomID, argumentMatcher, entities);
+    private Rule parseRule(SWRLRule swrlRule) {
+        String name = getRuleName(swrlRule);
+        if (name == null) {
+            LOG.warn("Skipping rule without a label: {}", swrlRule);
+            return null;
+        }
+        Rule rule = new Rule(name);
+        for (SWRLAtom atom : swrlRule.getBody()) {
+            AbstractAtom bodyAtom = parseSWRLAtom(atom);
+            if (bodyAtom == null) {
+                LOG.warn("Skipping rule {} with unsupported atom {}", name, atom);
+                return null;
+            }
+            if (isDeclarationAtom(bodyAtom))
+                rule.addDeclarationAtom(bodyAtom);
+            else
+                rule.addBodyAtom(bodyAtom);
+        }
+        for (SWRLAtom atom : swrlRule.getHead()) {
+            AbstractAtom headAtom = parseSWRLAtom(atom);
+            if (headAtom == null) {
+                LOG.warn("Skipping rule {} with unsupported atom {}", name, atom);
+                return null;
             }
+            rule.addHeadAtom(headAtom);
+        }
+        return rule;
+    }
+
+    private String getRuleName(SWRLRule swrlRule) {
+        for (OWLAnnotation annotation : swrlRule.getAnnotations()) {
+            if (annotation.getProperty().isLabel() && annotation.getValue() instanceof OWLLiteral)
+                return ((OWLLiteral) annotation.getValue()).getLiteral();
         }
         return null;
     }
 
-    private AbstractAtom parseClassAtom(String atomID,
-                                        Matcher argumentMatcher,
-                                        Set<OntologyClass> classes,
-                                        Set<Entity> entities) {
-        if (argumentMatcher.find()) {
-            String argumentType = argumentMatcher.group("argumentType");
-            String argumentID = argumentMatcher.group("argumentID");
-            if (argumentType.equals("Variable"))
-                return new ClassDeclarationAtom<>(findEntity(atomID, classes), new Variable(argumentID));
-            if (Others.containsEntity(argumentID, entities))
-                return new ClassDeclarationAtom<>(findEntity(atomID, classes), findEntity(argumentID, entities));
+    /**
+     * Returns null for atoms other than class, property and two argument built-in atoms, or if some argument is an
+     * entity not found in the registry.
+     */
+    private AbstractAtom parseSWRLAtom(SWRLAtom swrlAtom) {
+        if (swrlAtom instanceof SWRLClassAtom)
+            return parseClassAtom((SWRLClassAtom) swrlAtom);
+        if (swrlAtom instanceof SWRLObjectPropertyAtom || swrlAtom instanceof SWRLDataPropertyAtom) {
+            SWRLBinaryAtom<?, ?> binaryAtom = (SWRLBinaryAtom<?, ?>) swrlAtom;
+            OWLPropertyExpression property = (OWLPropertyExpression) swrlAtom.getPredicate();
+            if (property.isAnonymous())
+                return null;
+            return createTwoArgumentsAtom(new TwoArgumentsAtom<>(shortFormProvider.getShortForm((OWLEntity) property)),
+                    binaryAtom.getFirstArgument(), binaryAtom.getSecondArgument());
+        }
+        if (swrlAtom instanceof SWRLBuiltInAtom) {
+            List<SWRLDArgument> arguments = ((SWRLBuiltInAtom) swrlAtom).getArguments();
+            if (arguments.size() != 2)
+                return null;
+            String builtIn = ((SWRLBuiltInAtom) swrlAtom).getPredicate().getShortForm();
+            return createTwoArgumentsAtom(new TwoArgumentsAtom<>(builtIn, SWRLB_PREFIX),
+                    arguments.get(0), arguments.get(1));
         }
         return null;
     }
 
-    private AbstractAtom parseTwoArgumentsAtom(String atomType,
-                                               String atomID,
-                                               Matcher argumentMatcher,
-                                               Set<Entity> entities) {
-        int i = 0;
-        @SuppressWarnings("rawtypes")
-        TwoArgumentsAtom atom;
-        if (atomType.equals("BuiltInAtom"))
-            atom = new TwoArgumentsAtom<>(atomID, "swrlb");
+    private AbstractAtom parseClassAtom(SWRLClassAtom classAtom) {
+        if (classAtom.getPredicate().isAnonymous())
+            return null;
+        OntologyClass ontologyClass = registry.findClass(shortFormProvider.getShortForm(classAtom.getPredicate().asOWLClass()));
+        Object argument = parseArgument(classAtom.getArgument());
+        if (ontologyClass == null || argument == null)
+            return null;
+        return new ClassDeclarationAtom<>(ontologyClass, argument);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AbstractAtom createTwoArgumentsAtom(@SuppressWarnings("rawtypes") TwoArgumentsAtom atom,
+                                                SWRLArgument argument1, SWRLArgument argument2) {
+        atom.setArgument1(parseArgument(argument1));
+        atom.setArgument2(parseArgument(argument2));
+        if (atom.getArgument1() != null && atom.getArgument2() != null)
+            return atom;
         else
-            atom = new TwoArgumentsAtom<>(atomID);
-        while (argumentMatcher.find()) {
-            i += 1;
-            String argumentType = argumentMatcher.group("argumentType");
-            String argumentID = argumentMatcher.group("argumentID");
-            String value = argumentMatcher.group("value");
-            String valueType = argumentMatcher.group("valueType");
-
-            if (argumentType != null && argumentID != null) {
-                if (argumentType.equals("Variable")) {
-                    setAtomArgument(atom, new Variable(argumentID), i);
-                } else if (argumentType.equals("")) {
-                    Entity entity = findEntity(argumentID, entities);
-                    setAtomArgument(atom, entity, i);
+            return null;
+    }
+
+    /**
+     * Variables, registered named individuals and typed literals, null for other arguments.
+     */
+    private Object parseArgument(SWRLArgument argument) {
+        if (argument instanceof SWRLVariable)
+            return new Variable(((SWRLVariable) argument).getIRI().getShortForm());
+        if (argument instanceof SWRLIndividualArgument) {
+            OWLIndividual individual = ((SWRLIndividualArgument) argument).getIndividual();
+            return individual.isNamed()
+                    ? registry.findEntity(shortFormProvider.getShortForm(individual.asOWLNamedIndividual()))
+                    : null;
+        }
+        if (argument instanceof SWRLLiteralArgument)
+            return parseLiteral(((SWRLLiteralArgument) argument).getLiteral());
+        return null;
+    }
+
+    /**
+     * Float and double literals are read as floats, other numeric literals as integers if they are integral and as
+     * floats otherwise.
+     */
+    private Object parseLiteral(OWLLiteral literal) {
+        OWLDatatype datatype = literal.getDatatype();
+        try {
+            if (datatype.isFloat() || datatype.isDouble())
+                return Float.parseFloat(literal.getLiteral());
+            if (datatype.isBuiltIn() && datatype.getBuiltInDatatype().isNumeric()) {
+                try {
+                    return Integer.parseInt(literal.getLiteral());
+                } catch (NumberFormatException e) {
+                    return Float.parseFloat(literal.getLiteral());
                 }
-            } else if (valueType != null && value != null && StringUtils.isNumeric(value)) {
-                int intVal = Integer.parseInt(value);
-                setAtomArgument(atom, intVal, i);
             }
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid numeric literal {}", literal);
         }
-        if (i == 2 && atom.getArgument1() != null && atom.getArgument2() != null)
-            return atom;
-        else
-            return null;
+        if (datatype.isBoolean())
+            return literal.parseBoolean();
+        return literal.getLiteral();
+    }
+
+    /**
+     * Declaration and body atoms form the body of the rule axiom, which is labelled with the name of the rule.
+     */
+    private SWRLRule createSWRLRule(Rule rule) {
+        Set<SWRLAtom> body = new LinkedHashSet<>();
+        for (AbstractAtom atom : rule.getDeclarationAtoms())
+            body.add(createSWRLAtom(atom));
+        for (AbstractAtom atom : rule.getBodyAtoms())
+            body.add(createSWRLAtom(atom));
+        Set<SWRLAtom> head = new LinkedHashSet<>();
+        for (AbstractAtom atom : rule.getHeadAtoms())
+            head.add(createSWRLAtom(atom));
+        OWLAnnotation label = factory.getOWLAnnotation(factory.getRDFSLabel(), factory.getOWLLiteral(rule.getName()));
+        return factory.getSWRLRule(body, head, singleton(label));
     }
 
-    private <T> void setAtomArgument(TwoArgumentsAtom atom, T argument, int i) {
-        switch (i) {
-            case 1:
-                atom.setArgument1(argument);
-            case 2:
-                atom.setArgument2(argument);
+    /**
+     * Two argument atoms are built-in atoms if prefixed with swrlb, otherwise object or data property atoms
+     * depending on the property declared in the ontology.
+     */
+    private SWRLAtom createSWRLAtom(AbstractAtom atom) {
+        if (atom instanceof ClassDeclarationAtom) {
+            ClassDeclarationAtom<?> classAtom = (ClassDeclarationAtom<?>) atom;
+            return factory.getSWRLClassAtom(factory.getOWLClass(classAtom.getClassEntity().getID(), prefixManager),
+                    createIArgument(classAtom.getArgument()));
+        }
+        if (atom instanceof TwoArgumentsAtom) {
+            TwoArgumentsAtom<?, ?> twoArgumentsAtom = (TwoArgumentsAtom<?, ?>) atom;
+            Object argument1 = twoArgumentsAtom.getArgument1();
+            Object argument2 = twoArgumentsAtom.getArgument2();
+            if (SWRLB_PREFIX.equals(atom.getPrefix()))
+                return factory.getSWRLBuiltInAtom(IRI.create(Namespaces.SWRLB.toString(), atom.getPredicate()),
+                        asList(createDArgument(argument1), createDArgument(argument2)));
+            IRI propertyIRI = prefixManager.getIRI(atom.getPredicate());
+            if (ontology.containsObjectPropertyInSignature(propertyIRI, INCLUDED))
+                return factory.getSWRLObjectPropertyAtom(factory.getOWLObjectProperty(propertyIRI),
+                        createIArgument(argument1), createIArgument(argument2));
+            if (ontology.containsDataPropertyInSignature(propertyIRI, INCLUDED))
+                return factory.getSWRLDataPropertyAtom(factory.getOWLDataProperty(propertyIRI),
+                        createIArgument(argument1), createDArgument(argument2));
+            throw new IllegalArgumentException(format("UNKNOWN_PROPERTY %s", atom.getPredicate()));
         }
+        throw new IllegalArgumentException(format("UNSUPPORTED_ATOM %s", atom));
+    }
+
+    private SWRLIArgument createIArgument(Object argument) {
+        if (argument instanceof Variable)
+            return createVariable((Variable) argument);
+        if (argument instanceof Entity)
+            return factory.getSWRLIndividualArgument(
+                    factory.getOWLNamedIndividual(((Entity) argument).getID(), prefixManager));
+        throw new IllegalArgumentException(format("INVALID_INDIVIDUAL_ARGUMENT %s", argument));
+    }
+
+    /**
+     * Floats are typed as xsd:float, so they are read back as floats by {@link #loadRules()}.
+     */
+    private SWRLDArgument createDArgument(Object argument) {
+        if (argument instanceof Variable)
+            return createVariable((Variable) argument);
+        if (argument instanceof Float)
+            return factory.getSWRLLiteralArgument(factory.getOWLLiteral((Float) argument));
+        if (argument instanceof Integer)
+            return factory.getSWRLLiteralArgument(factory.getOWLLiteral((Integer) argument));
+        if (argument instanceof Boolean)
+            return factory.getSWRLLiteralArgument(factory.getOWLLiteral((Boolean) argument));
+        if (argument instanceof String)
+            return factory.getSWRLLiteralArgument(factory.getOWLLiteral((String) argument));
+        throw new IllegalArgumentException(format("INVALID_DATA_ARGUMENT %s", argument));
+    }
+
+    private SWRLVariable createVariable(Variable variable) {
+        return factory.getSWRLVariable(IRI.create(prefixManager.getDefaultPrefix(), variable.getName()));
     }
 
     private boolean isDeclarationAtom(AbstractAtom atom) {
@@ -0,0 +1,144 @@
+package pl.edu.agh.plonka.bartlomiej.menes.model.rule;
+
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.NumericProperty;
+import pl.edu.agh.plonka.bartlomiej.menes.model.ObjectProperty;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
+import pl.edu.agh.plonka.bartlomiej.menes.model.PremiseProperties;
+import pl.edu.agh.plonka.bartlomiej.menes.model.TrainingSet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CoverageIndexTest {
+
+    private static final Entity COUGH = new Entity("Cough");
+    private static final Entity DYSPNOEA = new Entity("Dyspnoea");
+    private static final Entity COLD = new Entity("Cold");
+    private static final Entity FLU = new Entity("Flu");
+
+    private List<Patient> patients;
+    private CoverageIndex index;
+
+    @Before
+    public void setUp() {
+        patients = new ArrayList<>();
+        patients.add(generatePatient("patient1", 24f, COLD, COUGH));
+        patients.add(generatePatient("patient2", 60f, FLU, COUGH, DYSPNOEA));
+        patients.add(generatePatient("patient3", null, COLD, DYSPNOEA));
+        patients.add(generatePatient("patient4", 40f, COLD));
+        PremiseProperties premiseProperties = new PremiseProperties(
+                singleton(new NumericProperty("age")),
+                singleton(new ObjectProperty("hasSymptom")));
+        index = new CoverageIndex(new TrainingSet(patients, premiseProperties, singleton(new ObjectProperty("hasDisease"))));
+    }
+
+    @Test
+    public void testEntityCoverage() {
+        Complex complex = new Complex();
+        complex.setEntitySelector(new ObjectProperty("hasSymptom"), new EntitiesSelector(asList(COUGH, DYSPNOEA)));
+
+        assertCoverage(complex);
+        assertEquals(1, complex.getCoverage(index).cardinality());
+    }
+
+    @Test
+    public void testNumericCoverage() {
+        Complex complex = new Complex();
+        complex.setNumericSelector(new NumericProperty("age"), LinearSelector.atLeastSelector(24f));
+        assertCoverage(complex);
+
+        complex.setNumericSelector(new NumericProperty("age"), LinearSelector.lessThanSelector(60f));
+        assertCoverage(complex);
+
+        complex.setNumericSelector(new NumericProperty("age"), LinearSelector.equalSelector(40f));
+        assertCoverage(complex);
+    }
+
+    @Test
+    public void testConjunctionCoverage() {
+        Complex entityComplex = new Complex();
+        entityComplex.setEntitySelector(new ObjectProperty("hasSymptom"), new EntitiesSelector(asList(COUGH)));
+        Complex numericComplex = new Complex();
+        numericComplex.setNumericSelector(new NumericProperty("age"), LinearSelector.greaterThanSelector(30f));
+
+        assertCoverage(Complex.conjunction(entityComplex, numericComplex));
+        assertCoverage(new Complex());
+    }
+
+    @Test
+    public void testCategoryCoverage() {
+        BitSet categoryCoverage = index.getCategoryCoverage(new Category(COLD, "hasDisease"));
+
+        assertEquals(3, categoryCoverage.cardinality());
+        assertFalse(categoryCoverage.get(1));
+    }
+
+    @Test
+    public void testCategoryCoveredCounts() {
+        Complex complex = new Complex();
+        complex.setEntitySelector(new ObjectProperty("hasSymptom"), new EntitiesSelector(asList(COUGH)));
+
+        assertEquals(2, index.getCoveredCount(complex));
+        assertEquals(1, index.getCoveredCount(complex, new Category(COLD, "hasDisease")));
+        assertEquals(1, index.getCoveredCount(complex, new Category(FLU, "hasDisease")));
+        assertEquals(0, index.getCoveredCount(complex, new Category(COUGH, "hasDisease")));
+        assertEquals(0, index.getCoveredCount(complex, new Category(COLD, "hasSymptom")));
+    }
+
+    @Test
+    public void testCachedCoverage() {
+        Complex entityComplex = new Complex();
+        entityComplex.setEntitySelector(new ObjectProperty("hasSymptom"), new EntitiesSelector(asList(COUGH)));
+        Complex numericComplex = new Complex();
+        numericComplex.setNumericSelector(new NumericProperty("age"), LinearSelector.atMostSelector(40f));
+        Complex conjunction1 = Complex.conjunction(entityComplex, numericComplex);
+        Complex conjunction2 = Complex.conjunction(numericComplex, entityComplex);
+
+        assertEquals(conjunction1, conjunction2);
+        assertEquals(conjunction1.hashCode(), conjunction2.hashCode());
+        assertCoverage(conjunction1);
+        assertCoverage(conjunction2);
+        assertEquals(1, index.getCacheStats().missCount());
+        assertEquals(1, index.getCacheStats().hitCount());
+    }
+
+    @Test
+    public void testCacheBoundedByBytes() {
+        index = new CoverageIndex(index.getTrainingSet(), 300);
+        Complex entityComplex = new Complex();
+        entityComplex.setEntitySelector(new ObjectProperty("hasSymptom"), new EntitiesSelector(asList(COUGH)));
+        Complex numericComplex = new Complex();
+        numericComplex.setNumericSelector(new NumericProperty("age"), LinearSelector.atMostSelector(40f));
+
+        assertCoverage(entityComplex);
+        assertCoverage(numericComplex);
+        assertCoverage(entityComplex);
+        assertEquals(3, index.getCacheStats().missCount());
+        assertEquals(0, index.getCacheStats().hitCount());
+    }
+
+    private void assertCoverage(Complex complex) {
+        BitSet coverage = complex.getCoverage(index);
+        for (int row = 0; row < patients.size(); row++)
+            assertEquals(complex.isPatientCovered(patients.get(row)), coverage.get(row));
+    }
+
+    private Patient generatePatient(String patientId, Float age, Entity disease, Entity... symptoms) {
+        Patient patient = new Patient(patientId);
+        if (age != null)
+            patient.setNumericProperty("age", age);
+        if (disease != null)
+            patient.setEntityProperty("hasDisease", disease);
+        patient.setEntityProperties("hasSymptom", asList(symptoms));
+        return patient;
+    }
+}
@@ -0,0 +1,113 @@
+package pl.edu.agh.plonka.bartlomiej.menes.server;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MicroBatcherTest {
+
+    private MicroBatcher<Integer, Integer> batcher;
+
+    @After
+    public void tearDown() {
+        batcher.stop();
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        batcher = new MicroBatcher<>(items -> {
+            batchSizes.add(items.size());
+            return items.stream().map(item -> 2 * item).collect(toList());
+        }, 5, 1000, 100);
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            results.add(batcher.submit(i));
+        batcher.start();
+
+        for (int i = 0; i < 10; i++)
+            assertEquals(2 * i, (int) results.get(i).get());
+        assertEquals(asList(5, 5), batchSizes);
+        assertEquals(2, batcher.getBatchesCount());
+    }
+
+    @Test
+    public void testWorkerSurvivesError() throws Exception {
+        batcher = new MicroBatcher<>(items -> {
+            if (items.contains(0))
+                throw new AssertionError("processor failed");
+            return items;
+        }, 1, 0, 10);
+        batcher.start();
+
+        try {
+            batcher.submit(0).get(1, SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        assertEquals(1, (int) batcher.submit(1).get(1, SECONDS));
+        assertEquals(2, batcher.getBatchesCount());
+    }
+
+    @Test
+    public void testCancelledRequestIsNotProcessed() throws Exception {
+        List<Integer> processedItems = new CopyOnWriteArrayList<>();
+        batcher = new MicroBatcher<>(items -> {
+            processedItems.addAll(items);
+            return items;
+        }, 5, 0, 10);
+
+        CompletableFuture<Integer> first = batcher.submit(1);
+        CompletableFuture<Integer> cancelled = batcher.submit(2);
+        CompletableFuture<Integer> last = batcher.submit(3);
+        cancelled.cancel(false);
+        batcher.start();
+
+        assertEquals(1, (int) first.get(1, SECONDS));
+        assertEquals(3, (int) last.get(1, SECONDS));
+        assertEquals(asList(1, 3), processedItems);
+        assertEquals(2, batcher.getProcessedCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectionWhenQueueIsFull() throws Exception {
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        batcher = new MicroBatcher<>(items -> {
+            processing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return items;
+        }, 1, 0, 1);
+        batcher.start();
+        batcher.submit(1);
+        processing.await();
+        batcher.submit(2);
+
+        try {
+            batcher.submit(3);
+        } finally {
+            assertEquals(1, batcher.getRejectedCount());
+            release.countDown();
+        }
+    }
+}
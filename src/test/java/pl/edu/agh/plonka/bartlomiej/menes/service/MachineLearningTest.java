@@ -3,9 +3,9 @@ package pl.edu.agh.plonka.bartlomiej.menes.service;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
-import org.springframework.util.Assert;
 import pl.edu.agh.plonka.bartlomiej.menes.model.*;
 import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.RuleSignature;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
@@ -19,6 +19,8 @@ import static java.util.Arrays.stream;
 import static java.util.Collections.singleton;
 import static java.util.stream.Collectors.toSet;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -121,7 +123,7 @@ public class MachineLearningTest {
 
         Collection<Rule> rules = machineLearning.sequentialCovering(patients, hasDiseaseProperty);
 
-        Assert.notEmpty(rules);
+        assertFalse(rules.isEmpty());
     }
 
     private static void mockOntology() {
@@ -163,6 +165,54 @@ public class MachineLearningTest {
     }
 
 
+    @Test
+    public void testIncrementalLearning() throws Throwable {
+        LearningConfig config = new LearningConfig();
+        config.setIncremental(true);
+        MachineLearning incrementalLearning = new MachineLearning(ontology, config);
+        Set<Patient> patients = new HashSet<>();
+        patients.add(generatePatient("patient1", 24f, "StabbingChestPain", "EKG", "Myocarditis"));
+        patients.add(generatePatient("patient2", 24f, "Dyspnoea", "ChestXRay", "Pericarditis"));
+        patients.add(generatePatient("patient3", 60f, "StabbingChestPain", "ChestXRay", "LungCancer"));
+        Set<ObjectProperty> predicateCategories = singleton(findEntity("hasDisease", OBJECT_PROPERTIES));
+
+        Set<RuleSignature> rules = signatures(incrementalLearning.sequentialCovering(patients, predicateCategories));
+        assertEquals(rules, signatures(incrementalLearning.sequentialCovering(patients, predicateCategories)));
+
+        // the Myocarditis rule covers the new patient, it is specialized while the other two rules are kept
+        patients.add(generatePatient("patient4", 40f, "StabbingChestPain", "EKG", "Pericarditis"));
+        Set<RuleSignature> newRules = signatures(incrementalLearning.sequentialCovering(patients, predicateCategories));
+        assertEquals(4, newRules.size());
+        rules.retainAll(newRules);
+        assertEquals(2, rules.size());
+    }
+
+    @Test
+    public void testIncrementalLearningEvaluatesFewerComplexes() throws Throwable {
+        LearningConfig config = new LearningConfig();
+        config.setIncremental(true);
+        MachineLearning incrementalLearning = new MachineLearning(ontology, config);
+        Set<Patient> patients = new HashSet<>();
+        patients.add(generatePatient("patient1", 24f, "StabbingChestPain", "EKG", "Myocarditis"));
+        patients.add(generatePatient("patient2", 24f, "Dyspnoea", "ChestXRay", "Pericarditis"));
+        patients.add(generatePatient("patient3", 60f, "StabbingChestPain", "ChestXRay", "LungCancer"));
+        Set<ObjectProperty> predicateCategories = singleton(findEntity("hasDisease", OBJECT_PROPERTIES));
+
+        incrementalLearning.sequentialCovering(patients, predicateCategories);
+        patients.add(generatePatient("patient4", 40f, "StabbingChestPain", "EKG", "Pericarditis"));
+        incrementalLearning.sequentialCovering(patients, predicateCategories);
+        long incrementalRequests = incrementalLearning.getCacheStats().requestCount();
+        machineLearning.sequentialCovering(patients, predicateCategories);
+        long scratchRequests = machineLearning.getCacheStats().requestCount();
+
+        // kept rules are only checked, complexes are searched only for patients they no longer cover
+        assertTrue(incrementalRequests < scratchRequests);
+    }
+
+    private static Set<RuleSignature> signatures(Collection<Rule> rules) {
+        return rules.stream().map(Rule::getSignature).collect(toSet());
+    }
+
     private Patient generatePatient(String patientId, Float age, String symptom, String negativeTest, String disease) {
         Patient patient = new Patient(patientId);
         patient.setNumericProperty("age", age);
@@ -1,7 +1,43 @@
 package pl.edu.agh.plonka.bartlomiej.menes.service;
 
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import static java.util.Collections.singleton;
 import static org.junit.Assert.*;
 
 public class OntologyWrapperTest {
 
-}
\ No newline at end of file
+    private static final String ONTOLOGY_FILE = "src/test/resources/human_diseases.owl";
+
+    @Test
+    public void testRuleWithUnknownClassIsSkipped() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.loadOntologyFromOntologyDocument(new File(ONTOLOGY_FILE));
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        String namespace = ontology.getOntologyID().getOntologyIRI().get() + "#";
+        SWRLVariable patient = factory.getSWRLVariable(IRI.create(namespace, "patient"));
+        // owl:Thing is registered as rendered, so it isn't found by its short form
+        OWLClass unknownClass = factory.getOWLThing();
+        OWLObjectProperty hasDisease = factory.getOWLObjectProperty(IRI.create(namespace, "hasDisease"));
+        OWLNamedIndividual cold = factory.getOWLNamedIndividual(IRI.create(namespace, "Cold"));
+        manager.addAxiom(ontology, factory.getSWRLRule(
+                singleton(factory.getSWRLClassAtom(unknownClass, patient)),
+                singleton(factory.getSWRLObjectPropertyAtom(hasDisease, patient, factory.getSWRLIndividualArgument(cold))),
+                singleton(factory.getOWLAnnotation(factory.getRDFSLabel(), factory.getOWLLiteral("UnknownClassRule")))));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        manager.saveOntology(ontology, output);
+
+        OntologyWrapper wrapper = new OntologyWrapper(new ByteArrayInputStream(output.toByteArray()));
+
+        int rulesCount = new OntologyWrapper(new File(ONTOLOGY_FILE)).getRules().size();
+        assertEquals(rulesCount, wrapper.getRules().size());
+        assertFalse(wrapper.getRules().contains(new Rule("UnknownClassRule")));
+    }
+}
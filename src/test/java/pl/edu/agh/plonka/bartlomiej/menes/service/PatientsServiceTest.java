@@ -1,10 +1,162 @@
 package pl.edu.agh.plonka.bartlomiej.menes.service;
 
 import org.junit.Before;
+import org.junit.Test;
+import pl.edu.agh.plonka.bartlomiej.menes.exception.CreateRuleException;
+import pl.edu.agh.plonka.bartlomiej.menes.exception.RuleAlreadyExistsException;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Entity;
+import pl.edu.agh.plonka.bartlomiej.menes.model.OntologyClass;
+import pl.edu.agh.plonka.bartlomiej.menes.model.ObjectProperty;
+import pl.edu.agh.plonka.bartlomiej.menes.model.Patient;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.ClassDeclarationAtom;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Rule;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.TwoArgumentsAtom;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.Variable;
+
+import java.util.HashSet;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.*;
 
 public class PatientsServiceTest {
 
+    private OntologyWrapper ontology;
+    private PatientsService patientsService;
+
     @Before
     public void setUp() throws Exception {
+        ontology = mock(OntologyWrapper.class);
+        when(ontology.getPatients()).thenReturn(singleton(new Patient("patient1")));
+        when(ontology.getRules()).thenReturn(singleton(new Rule("rule1")));
+        patientsService = new PatientsService(ontology, null);
+    }
+
+    @Test
+    public void testRulesBatch() throws Exception {
+        patientsService.rulesBatch()
+                .deleteRule(new Rule("rule1"))
+                .addRules(asList(new Rule("rule1"), rule("rule2", "Cough", "Cold"), new Rule("rule3")))
+                .apply();
+
+        verify(ontology, times(1)).replaceRules(anyCollectionOf(Rule.class), anyCollectionOf(Rule.class));
+        verify(ontology, times(1)).updatePatients(anyCollectionOf(Patient.class));
+        assertEquals(3, patientsService.getRules().size());
+    }
+
+    @Test
+    public void testRulesBatchRenamingRule() throws Exception {
+        patientsService.rulesBatch()
+                .deleteRule(new Rule("rule1"))
+                .addRule(new Rule("rule2"))
+                .apply();
+
+        verify(ontology, times(1)).replaceRules(anyCollectionOf(Rule.class), anyCollectionOf(Rule.class));
+        verify(ontology, never()).updatePatients(anyCollectionOf(Patient.class));
+        assertEquals(singleton(new Rule("rule2")), patientsService.getRules());
+    }
+
+    @Test
+    public void testDeleteRule() throws Exception {
+        patientsService.deleteRule(new Rule("rule1"));
+
+        verify(ontology, times(1)).replaceRules(anyCollectionOf(Rule.class), anyCollectionOf(Rule.class));
+        verify(ontology, never()).deleteRules(anyCollectionOf(Rule.class));
+        verify(ontology, times(1)).updatePatients(anyCollectionOf(Patient.class));
+        assertEquals(emptySet(), patientsService.getRules());
+    }
+
+    @Test(expected = CreateRuleException.class)
+    public void testRulesBatchWithInvalidRule() throws Exception {
+        doThrow(new CreateRuleException(new Rule("rule2"), new IllegalArgumentException()))
+                .when(ontology).replaceRules(anyCollectionOf(Rule.class), anyCollectionOf(Rule.class));
+        try {
+            patientsService.rulesBatch()
+                    .deleteRule(new Rule("rule1"))
+                    .addRule(rule("rule2", "Cough", "Cold"))
+                    .apply();
+        } finally {
+            verify(ontology, never()).updatePatients(anyCollectionOf(Patient.class));
+            assertEquals(singleton(new Rule("rule1")), patientsService.getRules());
+        }
+    }
+
+    @Test(expected = RuleAlreadyExistsException.class)
+    public void testRulesBatchWithExistingRule() throws Exception {
+        try {
+            patientsService.rulesBatch()
+                    .addRules(asList(new Rule("rule2"), new Rule("rule1")))
+                    .apply();
+        } finally {
+            verify(ontology, never()).replaceRules(anyCollectionOf(Rule.class), anyCollectionOf(Rule.class));
+            verify(ontology, never()).updatePatients(anyCollectionOf(Patient.class));
+        }
+    }
+
+    @Test
+    public void testLearnNewRulesAppliesOnlyChangedRules() throws Throwable {
+        Rule coldRule = rule("Generated_Cold_1", "Cough", "Cold");
+        Rule fluRule = rule("Generated_Flu_1", "Fever", "Flu");
+        when(ontology.getRules()).thenReturn(new HashSet<>(asList(coldRule, fluRule)));
+        MachineLearning machineLearning = mock(MachineLearning.class);
+        when(machineLearning.sequentialCovering(anySetOf(Patient.class), anySetOf(ObjectProperty.class)))
+                .thenReturn(asList(rule("Generated_Cold_2", "Cough", "Cold"), rule("Generated_Cold_1", "Rash", "Cold")));
+        patientsService = new PatientsService(ontology, machineLearning);
+
+        patientsService.learnNewRules(emptySet());
+
+        RulesChanges changes = patientsService.getLastRulesChanges();
+        assertEquals(singletonList(coldRule), changes.getUnchangedRules());
+        assertEquals(singletonList(fluRule), changes.getDeletedRules());
+        assertEquals(singletonList(new Rule("Generated_Cold_1_1")), changes.getAddedRules());
+        verify(ontology).replaceRules(anyCollectionOf(Rule.class), anyCollectionOf(Rule.class));
+        assertEquals(new HashSet<>(asList(coldRule, new Rule("Generated_Cold_1_1"))), patientsService.getRules());
+    }
+
+    @Test
+    public void testInferByCompiledRules() {
+        Patient patient = new Patient("patient1");
+        patient.setEntityProperties("hasSymptom", singleton(new Entity("Cough")));
+        when(ontology.getPatients()).thenReturn(singleton(patient));
+        when(ontology.getRules()).thenReturn(singleton(rule("rule1", "Cough", "Cold")));
+        patientsService = new PatientsService(ontology, null);
+
+        patientsService.inferByRules();
+
+        verify(ontology, never()).getInferredPatients(anyCollectionOf(Patient.class));
+        assertEquals(singleton(new Entity("Cold")), patient.getInferredEntityProperties().get("hasDisease"));
+    }
+
+    @Test
+    public void testInferByRulesWithNotCompiledRule() {
+        Variable patient = new Variable("patient");
+        Variable disease = new Variable("disease");
+        Rule treatmentRule = new Rule("PatientTreatment");
+        treatmentRule.addDeclarationAtom(new ClassDeclarationAtom<>(new OntologyClass("Patient"), patient));
+        treatmentRule.addDeclarationAtom(new ClassDeclarationAtom<>(new OntologyClass("Disease"), disease));
+        treatmentRule.addBodyAtom(new TwoArgumentsAtom<>("hasDisease", patient, disease));
+        treatmentRule.addHeadAtom(new TwoArgumentsAtom<>("shouldBeTreatedWith", patient, new Entity("LyingInBed")));
+        when(ontology.getRules()).thenReturn(new HashSet<>(asList(rule("rule1", "Cough", "Cold"), treatmentRule)));
+        InferenceSummary summary = new InferenceSummary(1, 0, 0);
+        when(ontology.getInferredPatients(anyCollectionOf(Patient.class))).thenReturn(summary);
+        patientsService = new PatientsService(ontology, null);
+
+        assertSame(summary, patientsService.inferByRules());
+        verify(ontology, times(1)).getInferredPatients(anyCollectionOf(Patient.class));
+    }
+
+    private static Rule rule(String name, String symptom, String disease) {
+        Variable patient = new Variable("patient");
+        Rule rule = new Rule(name);
+        rule.addDeclarationAtom(new ClassDeclarationAtom<>(new OntologyClass("Patient"), patient));
+        rule.addBodyAtom(new TwoArgumentsAtom<>("hasSymptom", patient, new Entity(symptom)));
+        rule.addHeadAtom(new TwoArgumentsAtom<>("hasDisease", patient, new Entity(disease)));
+        return rule;
     }
-}
\ No newline at end of file
+}
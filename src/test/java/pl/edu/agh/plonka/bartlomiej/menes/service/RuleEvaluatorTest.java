@@ -0,0 +1,166 @@
+package pl.edu.agh.plonka.bartlomiej.menes.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.agh.plonka.bartlomiej.menes.model.*;
+import pl.edu.agh.plonka.bartlomiej.menes.model.rule.*;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RuleEvaluatorTest {
+
+    private static final Entity COUGH = new Entity("Cough");
+    private static final Entity FEVER = new Entity("Fever");
+    private static final Entity INFLAMMATION = new Entity("Inflammation");
+    private static final Entity COLD = new Entity("Cold");
+
+    private OntologyWrapper ontology;
+
+    @Before
+    public void setUp() {
+        ontology = mock(OntologyWrapper.class);
+        when(ontology.getClasses()).thenReturn(singleton(new OntologyClass("Patient")));
+    }
+
+    @Test
+    public void testForwardChaining() {
+        Complex symptoms = new Complex();
+        symptoms.setEntitySelector(new ObjectProperty("hasSymptom"), new EntitiesSelector(asList(COUGH, FEVER)));
+        Complex inflammation = new Complex();
+        inflammation.setEntitySelector(new ObjectProperty("hasSymptom"), new EntitiesSelector(singleton(INFLAMMATION)));
+        inflammation.setNumericSelector(new NumericProperty("age"), LinearSelector.lessThanSelector(15f));
+        RuleEvaluator evaluator = new RuleEvaluator(asList(
+                symptoms.generateRule("Generated1", new Category(INFLAMMATION, "hasSymptom"), ontology),
+                inflammation.generateRule("Generated2", new Category(COLD, "hasDisease"), ontology)));
+
+        Patient child = generatePatient("patient1", 10f, COUGH, FEVER);
+        Patient adult = generatePatient("patient2", 40f, COUGH, FEVER);
+        Patient healthy = generatePatient("patient3", 10f, COUGH);
+        evaluator.infer(asList(child, adult, healthy));
+
+        assertTrue(evaluator.isComplete());
+        assertEquals(singleton(INFLAMMATION), child.getInferredEntityProperties("hasSymptom"));
+        assertEquals(singleton(COLD), child.getInferredEntityProperties("hasDisease"));
+        assertEquals(singleton(INFLAMMATION), adult.getInferredEntityProperties("hasSymptom"));
+        assertEquals(emptySet(), adult.getInferredEntityProperties("hasDisease"));
+        assertEquals(emptySet(), healthy.getInferredEntityProperties("hasSymptom"));
+    }
+
+    @Test
+    public void testClassifyByNumericIntervals() {
+        RuleEvaluator evaluator = new RuleEvaluator(asList(
+                generateAgeRule("Generated1", LinearSelector.lessThanSelector(15f), new Entity("Chickenpox")),
+                generateAgeRule("Generated2", LinearSelector.atLeastSelector(15f), new Entity("Acne")),
+                generateAgeRule("Generated3", LinearSelector.equalSelector(15f), COLD),
+                generateAgeRule("Generated4", LinearSelector.greaterThanSelector(60f), new Entity("Atherosclerosis"))));
+
+        assertEquals(singleton(new Entity("Chickenpox")),
+                evaluator.classify(generatePatient("patient1", 10f)).get("hasDisease"));
+        assertEquals(new HashSet<>(asList(new Entity("Acne"), COLD)),
+                evaluator.classify(generatePatient("patient2", 15f)).get("hasDisease"));
+        assertEquals(new HashSet<>(asList(new Entity("Acne"), new Entity("Atherosclerosis"))),
+                evaluator.classify(generatePatient("patient3", 70f)).get("hasDisease"));
+        assertNull(evaluator.classify(generatePatient("patient4", null)).get("hasDisease"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testClassifyByManyNumericIntervals() {
+        Random random = new Random(42);
+        List<Complex> complexes = new ArrayList<>();
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int bound = random.nextInt(50);
+            LinearSelector<Float> selector;
+            switch (random.nextInt(6)) {
+                case 0:
+                    selector = LinearSelector.lessThanSelector((float) bound);
+                    break;
+                case 1:
+                    selector = LinearSelector.atMostSelector((float) bound);
+                    break;
+                case 2:
+                    selector = LinearSelector.greaterThanSelector((float) bound);
+                    break;
+                case 3:
+                    selector = LinearSelector.atLeastSelector((float) bound);
+                    break;
+                case 4:
+                    selector = LinearSelector.equalSelector((float) bound);
+                    break;
+                default:
+                    selector = (LinearSelector<Float>) LinearSelector.greaterThanSelector((float) bound)
+                            .conjunction(LinearSelector.atMostSelector((float) bound + random.nextInt(20) + 1));
+            }
+            Complex complex = new Complex();
+            complex.setNumericSelector(new NumericProperty("age"), selector);
+            complexes.add(complex);
+            rules.add(complex.generateRule("Generated" + i, new Category(new Entity("Disease" + i), "hasDisease"), ontology));
+        }
+        RuleEvaluator evaluator = new RuleEvaluator(rules);
+
+        for (float age = -1; age <= 75; age += 0.5f) {
+            Patient patient = generatePatient("patient", age);
+            Set<Entity> expected = new HashSet<>();
+            for (int i = 0; i < complexes.size(); i++) {
+                if (complexes.get(i).isPatientCovered(patient))
+                    expected.add(new Entity("Disease" + i));
+            }
+            assertEquals("age " + age, expected, evaluator.classify(patient).getOrDefault("hasDisease", emptySet()));
+        }
+    }
+
+    @Test
+    public void testClassifyByBooleanProperty() {
+        Variable patient = new Variable("patient");
+        Variable smoker = new Variable("smoker");
+        Rule rule = new Rule("Smoking");
+        rule.addDeclarationAtom(new ClassDeclarationAtom<>(new OntologyClass("Patient"), patient));
+        rule.addBodyAtom(new TwoArgumentsAtom<>("isSmoker", patient, smoker));
+        rule.addHeadAtom(new TwoArgumentsAtom<>("shouldMakeTest", patient, new Entity("Spirometry")));
+        RuleEvaluator evaluator = new RuleEvaluator(singleton(rule));
+        Patient smokingPatient = generatePatient("patient1", 40f);
+        smokingPatient.setBooleanProperties("isSmoker", singleton(false));
+
+        assertTrue(evaluator.isComplete());
+        assertEquals(singleton(new Entity("Spirometry")), evaluator.classify(smokingPatient).get("shouldMakeTest"));
+        assertNull(evaluator.classify(generatePatient("patient2", 40f)).get("shouldMakeTest"));
+    }
+
+    @Test
+    public void testRuleWithOtherVariables() {
+        Variable patient = new Variable("patient");
+        Variable disease = new Variable("disease");
+        Rule rule = new Rule("PatientTreatment");
+        rule.addDeclarationAtom(new ClassDeclarationAtom<>(new OntologyClass("Patient"), patient));
+        rule.addDeclarationAtom(new ClassDeclarationAtom<>(new OntologyClass("Disease"), disease));
+        rule.addBodyAtom(new TwoArgumentsAtom<>("hasDisease", patient, disease));
+        rule.addHeadAtom(new TwoArgumentsAtom<>("shouldBeTreatedWith", patient, new Entity("LyingInBed")));
+
+        RuleEvaluator evaluator = new RuleEvaluator(singleton(rule));
+
+        assertFalse(evaluator.isComplete());
+        assertEquals(singleton(rule), new HashSet<>(evaluator.getNotCompiledRules()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Rule generateAgeRule(String name, LinearSelector selector, Entity disease) {
+        Complex complex = new Complex();
+        complex.setNumericSelector(new NumericProperty("age"), selector);
+        return complex.generateRule(name, new Category(disease, "hasDisease"), ontology);
+    }
+
+    private static Patient generatePatient(String id, Float age, Entity... symptoms) {
+        Patient patient = new Patient(id);
+        patient.setNumericProperty("age", age);
+        patient.setEntityProperties("hasSymptom", asList(symptoms));
+        return patient;
+    }
+}